@@ -1,14 +1,20 @@
 package com.mrlu.protect.config;
 
 import com.mrlu.protect.filter.SignFilter;
+import com.mrlu.protect.nonce.LocalCachingNonceStore;
+import com.mrlu.protect.nonce.LocalNonceCache;
+import com.mrlu.protect.nonce.NonceStore;
+import com.mrlu.protect.nonce.RedisNonceStore;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.RedisTemplate;
 
 import javax.servlet.Filter;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author 简单de快乐
@@ -21,6 +27,30 @@ public class SignFilterConfig {
     @Value("${sign.maxTime:60}")
     private String signMaxTime;
 
+    /**
+     * 签名算法：MD5、HMAC_SHA256
+     */
+    @Value("${sign.algorithm:MD5}")
+    private String signAlgorithm;
+
+    /**
+     * HMAC_SHA256使用的服务端密钥
+     */
+    @Value("${sign.secret:}")
+    private String signSecret;
+
+    /**
+     * 请求体大小上限（字节），超过时返回参数错误
+     */
+    @Value("${sign.max-body-size:1048576}")
+    private String maxBodySize;
+
+    /**
+     * 本地nonce缓存的容量，小于等于0时不启用
+     */
+    @Value("${sign.local-nonce-size:100000}")
+    private long localNonceSize;
+
     /**
      * filter中的初始化参数
      */
@@ -29,6 +59,9 @@ public class SignFilterConfig {
     @Bean
     public FilterRegistrationBean contextFilterRegistrationBean() {
         initParametersMap.put("signMaxTime",signMaxTime);
+        initParametersMap.put("signAlgorithm", signAlgorithm);
+        initParametersMap.put("signSecret", signSecret);
+        initParametersMap.put("maxBodySize", maxBodySize);
         FilterRegistrationBean registration = new FilterRegistrationBean();
         registration.setFilter(signFilter());
         registration.setInitParameters(initParametersMap);
@@ -44,4 +77,17 @@ public class SignFilterConfig {
         return new SignFilter();
     }
 
+    /**
+     * redis作为nonce的最终判定，开启本地缓存时在前面加一层本地缓存
+     */
+    @Bean
+    public NonceStore nonceStore(RedisTemplate<String, Object> redisTemplate) {
+        NonceStore nonceStore = new RedisNonceStore(redisTemplate);
+        if (localNonceSize <= 0) {
+            return nonceStore;
+        }
+        LocalNonceCache localNonceCache = new LocalNonceCache(localNonceSize, Long.parseLong(signMaxTime), TimeUnit.SECONDS);
+        return new LocalCachingNonceStore(nonceStore, localNonceCache);
+    }
+
 }
@@ -0,0 +1,20 @@
+package com.mrlu.protect.constant;
+
+/**
+ * @author 简单de快乐
+ *
+ * 签名算法
+ */
+public enum SignAlgorithm {
+
+    /**
+     * MD5(nonce + timestamp + 参数json)，兼容原有客户端
+     */
+    MD5,
+
+    /**
+     * HmacSHA256，使用服务端密钥，客户端需持有同一个密钥才能签名
+     */
+    HMAC_SHA256
+
+}
@@ -1,7 +1,10 @@
 package com.mrlu.protect.filter;
 
 import com.alibaba.fastjson.JSON;
+import com.mrlu.protect.constant.SignAlgorithm;
 import com.mrlu.protect.entity.RequestHeader;
+import com.mrlu.protect.nonce.NonceStore;
+import com.mrlu.protect.request.RequestBodyTooLargeException;
 import com.mrlu.protect.request.SignRequestWrapper;
 import com.mrlu.protect.util.HttpDataUtil;
 import com.mrlu.protect.util.SignUtil;
@@ -9,16 +12,14 @@ import com.mrlu.response.ApiErrorCode;
 import com.mrlu.response.CommonResults;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.StringUtils;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
 
 import javax.annotation.Resource;
 import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.Collections;
 import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author 简单de快乐
@@ -28,17 +29,28 @@ import java.util.SortedMap;
 public class SignFilter implements Filter {
 
     @Resource
-    private RedisTemplate redisTemplate;
+    private NonceStore nonceStore;
 
     //从filter配置中获取sign过期时间
     private Long signMaxTime;
 
-    private static final String NONCE_KEY = "x-nonce-key-";
+    private SignAlgorithm signAlgorithm;
+
+    private String signSecret;
+
+    private int maxBodySize;
 
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
         String signTime = filterConfig.getInitParameter("signMaxTime");
         signMaxTime = Long.parseLong(signTime);
+        signAlgorithm = SignAlgorithm.valueOf(filterConfig.getInitParameter("signAlgorithm"));
+        signSecret = filterConfig.getInitParameter("signSecret");
+        String bodySize = filterConfig.getInitParameter("maxBodySize");
+        maxBodySize = StringUtils.isEmpty(bodySize) ? SignRequestWrapper.DEFAULT_MAX_BODY_SIZE : Integer.parseInt(bodySize);
+        if (signAlgorithm == SignAlgorithm.HMAC_SHA256 && StringUtils.isEmpty(signSecret)) {
+            throw new ServletException("sign.secret is required when sign.algorithm is HMAC_SHA256");
+        }
         Filter.super.init(filterConfig);
     }
 
@@ -46,24 +58,31 @@ public class SignFilter implements Filter {
     public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain filterChain) throws IOException, ServletException {
         HttpServletRequest request = (HttpServletRequest) servletRequest;
         HttpServletResponse response = (HttpServletResponse) servletResponse;
-        log.info("过滤的url：{}", request.getRequestURL());
-        SignRequestWrapper signRequestWrapper = new SignRequestWrapper(request);
-
-        // 构建请求头
-        RequestHeader header = RequestHeader.builder()
-                .nonce(request.getHeader("x-nonce"))
-                .timestamp(Long.parseLong(request.getHeader("x-time")))
-                .sign(request.getHeader("x-sign"))
-                .build();
+        log.debug("过滤的url：{}", request.getRequestURL());
 
+        // 先做不需要读取请求体的校验，非法请求在读取请求体之前就被拒绝
         // 验证请求头是否存在
-        boolean isHeaderEmpty = StringUtils.isEmpty(header.getSign()) || StringUtils.isEmpty(header.getNonce())
-                || header.getTimestamp() == null;
-        if (isHeaderEmpty) {
+        String nonce = request.getHeader("x-nonce");
+        String time = request.getHeader("x-time");
+        String sign = request.getHeader("x-sign");
+        if (StringUtils.isEmpty(sign) || StringUtils.isEmpty(nonce) || StringUtils.isEmpty(time)) {
             responseFail(response, ApiErrorCode.AUTHENTICATION_ARGS_EMPTY);
             return;
         }
+        long requestTime;
+        try {
+            requestTime = Long.parseLong(time);
+        } catch (NumberFormatException e) {
+            responseFail(response, ApiErrorCode.ARGS_ERROR);
+            return;
+        }
 
+        // 构建请求头
+        RequestHeader header = RequestHeader.builder()
+                .nonce(nonce)
+                .timestamp(requestTime)
+                .sign(sign)
+                .build();
 
          /* 1.重放验证
          * 判断timestamp时间戳与当前时间是否操过signMaxTime
@@ -77,42 +96,48 @@ public class SignFilter implements Filter {
             return;
         }
 
+        // 只支持GET、POST，其他请求不占用nonce
+        String method = request.getMethod();
+        if (!"GET".equals(method) && !"POST".equals(method)) {
+            responseFail(response, ApiErrorCode.AUTHENTICATION_ERROR);
+            return;
+        }
+
+        // 声明的请求体超过上限，不占用nonce也不读取请求体
+        if (request.getContentLengthLong() > maxBodySize) {
+            responseFail(response, ApiErrorCode.ARGS_ERROR);
+            return;
+        }
+
         // 2、判断nonce
         // 实际使用用户信息+时间戳+随机数等信息做个哈希之后，作为nonce参数
         // 这里是可能同时来两个nonce相关的请求，然后返回false。
-        // 所以这里的判断是否存在和设置是同一个操作。要写在lua脚本中
+        // 所以这里的判断是否存在和设置是同一个操作。SET NX PX一条命令就是原子的
         /*boolean nonceExist = redisTemplate.hasKey();
         if (nonceExist) {
             responseFail(response, ApiErrorCode.REPLAY_ERROR);
         } else {
             redisTemplate.opsForValue().set(NONCE_KEY + header.getNonce(), header.getNonce(), signMaxTime);
         }*/
-        String luaScript = getScript();
-        DefaultRedisScript<Long> script = new DefaultRedisScript<Long>(luaScript, Long.class);
-        script.setResultType(Long.class);
-        Long count = (Long) redisTemplate.execute(script, Collections.singletonList(NONCE_KEY + header.getNonce()), header.getNonce(), signMaxTime);
-        boolean nonceExist = (count == 1);
+        boolean nonceExist = !nonceStore.tryAcquire(header.getNonce(), signMaxTime, TimeUnit.SECONDS);
         if (nonceExist) {
             responseFail(response, ApiErrorCode.REPLAY_ERROR);
             return;
         }
 
-        // 获取请求参数，判断鉴权是否通过
+        // 3、前面的校验都通过后才读取请求参数，判断鉴权是否通过
+        SignRequestWrapper signRequestWrapper = new SignRequestWrapper(request, maxBodySize);
         SortedMap<String, Object> paramMap;
-        boolean pass;
-        String method = signRequestWrapper.getMethod();
-        switch (method) {
-            case "POST":
-                paramMap = HttpDataUtil.getBodyParams(signRequestWrapper);
-                pass = SignUtil.verifySign(paramMap, header);
-                break;
-            case "GET":
-                paramMap = HttpDataUtil.getUrlParams(signRequestWrapper);
-                pass = SignUtil.verifySign(paramMap, header);
-                break;
-            default:
-                pass = false;
+        try {
+            paramMap = "POST".equals(method)
+                    ? HttpDataUtil.getBodyParams(signRequestWrapper)
+                    : HttpDataUtil.getUrlParams(signRequestWrapper);
+        } catch (RequestBodyTooLargeException e) {
+            // 未声明Content-Length或实际数据比声明的多
+            responseFail(response, ApiErrorCode.ARGS_ERROR);
+            return;
         }
+        boolean pass = SignUtil.verifySign(paramMap, header, signAlgorithm, signSecret);
 
         if (pass) {
             // 鉴权通过
@@ -123,21 +148,6 @@ public class SignFilter implements Filter {
         }
     }
 
-    /*
-     * 脚本
-     */
-    public String getScript() {
-        String script = "local key = KEYS[1]\n" +
-                "local exist = tonumber(redis.call('EXISTS', key))\n" +
-                "if exist == 1 then\n" +
-                "return 1\n" +
-                "end\n" +
-                "redis.call('SET', key, ARGV[1])\n" +
-                "redis.call('EXPIRE', key, ARGV[2])\n" +
-                "return 0\n";
-        return script;
-    }
-
     private void responseFail(HttpServletResponse httpResponse, ApiErrorCode returnCode) throws IOException {
         CommonResults resultData = new CommonResults(returnCode);
         // 解决：getWriter() has already been called for this response
@@ -0,0 +1,58 @@
+package com.mrlu.protect.nonce;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author 简单de快乐
+ *
+ * 两级nonce存储：本地缓存在前，实际存储（redis）在后
+ * 本地已经见过的nonce直接判定为重放，其余交给delegate判定，delegate判定过的nonce都记录到本地
+ */
+public class LocalCachingNonceStore implements NonceStore {
+
+    private final NonceStore delegate;
+
+    private final LocalNonceCache localNonceCache;
+
+    public LocalCachingNonceStore(NonceStore delegate, LocalNonceCache localNonceCache) {
+        this.delegate = delegate;
+        this.localNonceCache = localNonceCache;
+    }
+
+    @Override
+    public boolean tryAcquire(String nonce, long ttl, TimeUnit unit) {
+        if (localNonceCache.contains(nonce)) {
+            return false;
+        }
+        boolean acquired = delegate.tryAcquire(nonce, ttl, unit);
+        localNonceCache.add(nonce);
+        return acquired;
+    }
+
+    @Override
+    public List<Boolean> tryAcquire(List<String> nonces, long ttl, TimeUnit unit) {
+        List<Boolean> acquired = new ArrayList<>(nonces.size());
+        // 本地未命中的nonce及其下标，稍后用delegate的结果回填
+        List<String> misses = new ArrayList<>(nonces.size());
+        List<Integer> missIndexes = new ArrayList<>(nonces.size());
+        for (int i = 0; i < nonces.size(); i++) {
+            acquired.add(Boolean.FALSE);
+            if (!localNonceCache.contains(nonces.get(i))) {
+                misses.add(nonces.get(i));
+                missIndexes.add(i);
+            }
+        }
+        if (misses.isEmpty()) {
+            return acquired;
+        }
+        List<Boolean> results = delegate.tryAcquire(misses, ttl, unit);
+        for (int j = 0; j < misses.size(); j++) {
+            acquired.set(missIndexes.get(j), results.get(j));
+            localNonceCache.add(misses.get(j));
+        }
+        return acquired;
+    }
+
+}
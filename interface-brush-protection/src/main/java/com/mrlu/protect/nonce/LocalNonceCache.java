@@ -0,0 +1,47 @@
+package com.mrlu.protect.nonce;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author 简单de快乐
+ *
+ * redis nonce校验前面的本地缓存
+ * （1）记录本节点见过的nonce，写入后signMaxTime秒过期，超过时间戳有效期的nonce本来就会被判定为签名过期
+ * （2）容量有上限，超过后按LRU淘汰，淘汰的nonce仍由redis判定，不影响正确性
+ * （3）命中本地缓存直接判定为重放，不再访问redis；未命中时仍以redis为准
+ * 没有使用布隆过滤器：误判会把正常请求当成重放直接拒绝，而精确的LRU只会漏判，漏判由redis兜底
+ */
+public class LocalNonceCache {
+
+    private final Cache<String, Boolean> nonces;
+
+    /**
+     * @param maximumSize 最多缓存的nonce数量
+     * @param ttl         nonce的有效期，与signMaxTime一致
+     * @param unit        {@code ttl} 参数的时间单位
+     */
+    public LocalNonceCache(long maximumSize, long ttl, TimeUnit unit) {
+        this.nonces = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl, unit)
+                .build();
+    }
+
+    /**
+     * 本节点是否已经见过该nonce
+     */
+    public boolean contains(String nonce) {
+        return nonces.getIfPresent(nonce) != null;
+    }
+
+    /**
+     * 记录nonce，无论redis判定为首次使用还是重放都记录，后续重放请求直接在本地拒绝
+     */
+    public void add(String nonce) {
+        nonces.put(nonce, Boolean.TRUE);
+    }
+
+}
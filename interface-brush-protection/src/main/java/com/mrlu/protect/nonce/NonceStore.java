@@ -0,0 +1,31 @@
+package com.mrlu.protect.nonce;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author 简单de快乐
+ *
+ * nonce存储，用于防重放校验
+ * 判断nonce是否已存在和记录nonce必须是同一个原子操作，否则并发的两个相同nonce请求可能同时通过
+ */
+public interface NonceStore {
+
+    /**
+     * 记录nonce
+     *
+     * @param nonce 客户端上传的nonce
+     * @param ttl   nonce的有效期，与签名有效期一致
+     * @param unit  {@code ttl} 参数的时间单位
+     * @return 首次使用返回true，已经使用过（重放）返回false
+     */
+    boolean tryAcquire(String nonce, long ttl, TimeUnit unit);
+
+    /**
+     * 批量记录nonce，供网关等一次校验多个请求的场景使用
+     *
+     * @return 与nonces一一对应的结果，含义同{@link #tryAcquire(String, long, TimeUnit)}
+     */
+    List<Boolean> tryAcquire(List<String> nonces, long ttl, TimeUnit unit);
+
+}
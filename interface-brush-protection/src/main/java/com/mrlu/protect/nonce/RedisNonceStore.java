@@ -0,0 +1,61 @@
+package com.mrlu.protect.nonce;
+
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author 简单de快乐
+ *
+ * 基于redis的nonce存储，每个nonce只需要一条SET key value NX PX命令，
+ * 不存在时写入并设置过期时间，存在时不做任何修改，判断和写入是原子的
+ * 批量校验时所有SET命令通过pipeline一次发送
+ */
+public class RedisNonceStore implements NonceStore {
+
+    private static final String NONCE_KEY = "x-nonce-key-";
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    public RedisNonceStore(RedisTemplate<String, Object> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public boolean tryAcquire(String nonce, long ttl, TimeUnit unit) {
+        Boolean absent = redisTemplate.opsForValue().setIfAbsent(NONCE_KEY + nonce, nonce, Duration.ofMillis(unit.toMillis(ttl)));
+        return Boolean.TRUE.equals(absent);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Boolean> tryAcquire(List<String> nonces, long ttl, TimeUnit unit) {
+        if (nonces.isEmpty()) {
+            return Collections.emptyList();
+        }
+        RedisSerializer<String> keySerializer = (RedisSerializer<String>) redisTemplate.getKeySerializer();
+        RedisSerializer<Object> valueSerializer = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+        Expiration expiration = Expiration.milliseconds(unit.toMillis(ttl));
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String nonce : nonces) {
+                connection.stringCommands().set(keySerializer.serialize(NONCE_KEY + nonce), valueSerializer.serialize(nonce),
+                        expiration, RedisStringCommands.SetOption.SET_IF_ABSENT);
+            }
+            return null;
+        });
+        List<Boolean> acquired = new ArrayList<>(results.size());
+        for (Object result : results) {
+            acquired.add(Boolean.TRUE.equals(result));
+        }
+        return acquired;
+    }
+
+}
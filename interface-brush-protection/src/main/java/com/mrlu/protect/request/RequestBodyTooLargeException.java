@@ -0,0 +1,18 @@
+package com.mrlu.protect.request;
+
+import java.io.IOException;
+
+/**
+ * @author 简单de快乐
+ *
+ * 请求体超过sign.max-body-size
+ */
+public class RequestBodyTooLargeException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RequestBodyTooLargeException(long maxBodySize) {
+        super("request body exceeds " + maxBodySize + " bytes");
+    }
+
+}
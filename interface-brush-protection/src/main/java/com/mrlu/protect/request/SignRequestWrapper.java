@@ -1,5 +1,6 @@
 package com.mrlu.protect.request;
 
+import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.StringUtils;
@@ -11,10 +12,14 @@ import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
 import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.SortedMap;
 import java.util.TreeMap;
 
 /**
@@ -27,11 +32,32 @@ import java.util.TreeMap;
 @Slf4j
 public class SignRequestWrapper extends HttpServletRequestWrapper {
 
+    /**
+     * 默认请求体上限1MB
+     */
+    public static final int DEFAULT_MAX_BODY_SIZE = 1024 * 1024;
+
     /**
      * request数据流只能读取一次，需要自己实现HttpServletRequestWrapper对数据流包装，目的是将request流保存下来
+     * 第一次使用时才读取，之后签名校验和controller共用同一份
      */
     private byte[] requestBody;
 
+    /**
+     * 解析后的请求体参数
+     */
+    private SortedMap<String, Object> bodyParams;
+
+    /**
+     * 是否表单请求
+     */
+    private final boolean form;
+
+    /**
+     * 请求体大小上限，超过时拒绝读取
+     */
+    private final int maxBodySize;
+
 //    public SignRequestWrapper(HttpServletRequest request) throws IOException {
 //        super(request);
 //
@@ -213,83 +239,169 @@ public class SignRequestWrapper extends HttpServletRequestWrapper {
 //
 //    }
 
-    public SignRequestWrapper(HttpServletRequest request) throws IOException {
-        super(request);
-        init(request);
+    public SignRequestWrapper(HttpServletRequest request) {
+        this(request, DEFAULT_MAX_BODY_SIZE);
     }
 
-    private void init(HttpServletRequest request) throws IOException {
-        String header = request.getHeader("Content-Type");
-        log.info("Content-Type={}", header);
-        if (StringUtils.isNotEmpty(header)) {
-            if (MediaType.APPLICATION_FORM_URLENCODED_VALUE.equals(header)) {
-                // post application/x-www-form-urlencoded
-                // 解决controller注入参数失败和校验是否重复请求失败
-
-
-                String queryString = request.getQueryString();
-                System.out.println("==queryString==>" +  queryString);
+    public SignRequestWrapper(HttpServletRequest request, int maxBodySize) {
+        super(request);
+        this.maxBodySize = maxBodySize;
+        String contentType = request.getContentType();
+        this.form = StringUtils.isNotEmpty(contentType)
+                && (contentType.startsWith(MediaType.APPLICATION_FORM_URLENCODED_VALUE) || contentType.startsWith(MediaType.MULTIPART_FORM_DATA_VALUE));
+    }
 
-                setRequestBodyWithForm(request);
-            } else if (header.startsWith(MediaType.MULTIPART_FORM_DATA_VALUE)) {
-                // post multipart/form-data
-                // 解决controller注入参数失败和校验是否重复请求失败
+    /**
+     * 请求体解析后的参数，按key排序，只解析一次，签名和业务共用
+     * （1）json请求：直接从缓存的字节解析，不再转成String
+     * （2）表单请求：post application/x-www-form-urlencoded、multipart/form-data
+     *     流会被request.getParameterMap()读取，直接使用解析好的参数，解决controller注入参数失败和校验是否重复请求失败
+     */
+    public SortedMap<String, Object> getBodyParams() throws IOException {
+        if (bodyParams == null) {
+            bodyParams = form ? getFormParams() : parseJson(getRequestBody());
+        }
+        return bodyParams;
+    }
 
-                String queryString = request.getQueryString();
-                System.out.println("==queryString==>" +  queryString);
+    /**
+     * 缓存的请求体，第一次调用时从原始流中一次性读取
+     */
+    public byte[] getRequestBody() throws IOException {
+        if (requestBody == null) {
+            requestBody = form ? JSONObject.toJSONString(getBodyParams()).getBytes(StandardCharsets.UTF_8) : readBody();
+        }
+        return requestBody;
+    }
 
-                setRequestBodyWithForm(request);
-            } else {
-                requestBody = StreamUtils.copyToByteArray(request.getInputStream());
+    /**
+     * Content-Length由客户端声明，不能直接按它分配数组：
+     * 超过上限的直接拒绝，未超过时按声明长度预分配，实际数据更多时再按需扩容，总长度同样不能超过上限
+     */
+    private byte[] readBody() throws IOException {
+        long contentLength = getRequest().getContentLengthLong();
+        if (contentLength > maxBodySize) {
+            throw new RequestBodyTooLargeException(maxBodySize);
+        }
+        byte[] body = new byte[contentLength < 0 ? Math.min(StreamUtils.BUFFER_SIZE, maxBodySize) : (int) Math.min(contentLength, maxBodySize)];
+        InputStream in = getRequest().getInputStream();
+        int offset = 0;
+        while (true) {
+            if (offset == body.length) {
+                // 数组已满，多读一个字节判断是否还有数据
+                int next = in.read();
+                if (next < 0) {
+                    return body;
+                }
+                if (offset >= maxBodySize) {
+                    throw new RequestBodyTooLargeException(maxBodySize);
+                }
+                body = Arrays.copyOf(body, (int) Math.min(Math.max(body.length * 2L, StreamUtils.BUFFER_SIZE), maxBodySize));
+                body[offset++] = (byte) next;
+            }
+            int len = in.read(body, offset, body.length - offset);
+            if (len < 0) {
+                return Arrays.copyOf(body, offset);
             }
-        } else {
-            requestBody = StreamUtils.copyToByteArray(request.getInputStream());
+            offset += len;
         }
     }
 
-    private void setRequestBodyWithForm(HttpServletRequest request) {
-        TreeMap<String, Object> paramMap = new TreeMap<>();
-        Enumeration<String> paramNames = request.getParameterNames();
+    @SuppressWarnings("unchecked")
+    private static SortedMap<String, Object> parseJson(byte[] body) {
+        if (body.length == 0) {
+            return new TreeMap<>();
+        }
+        SortedMap<String, Object> params = JSON.parseObject(body, TreeMap.class);
+        return params == null ? new TreeMap<>() : params;
+    }
+
+    private SortedMap<String, Object> getFormParams() {
+        SortedMap<String, Object> paramMap = new TreeMap<>();
+        Enumeration<String> paramNames = getParameterNames();
         while (paramNames.hasMoreElements()) {
             String paramName = paramNames.nextElement();
-            String value = request.getParameter(paramName);
-            paramMap.put(paramName, value);
+            paramMap.put(paramName, getParameter(paramName));
         }
-        String params2Json = JSONObject.toJSONString(paramMap);
-        requestBody = params2Json.getBytes();
+        return paramMap;
     }
 
-
     @Override
     public ServletInputStream getInputStream() throws IOException {
+        return new CachedBodyInputStream(getRequestBody());
+    }
 
-        // 只能获取json形式传过来的
-        final ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(requestBody);
-        return new ServletInputStream() {
-            @Override
-            public boolean isFinished() {
-                return false;
-            }
+    @Override
+    public BufferedReader getReader() throws IOException {
+        String encoding = getCharacterEncoding();
+        Charset charset = encoding == null ? StandardCharsets.UTF_8 : Charset.forName(encoding);
+        return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+    }
 
-            @Override
-            public boolean isReady() {
-                return false;
-            }
+    /**
+     * 基于缓存字节的输入流，支持批量读取，数据都在内存中，所以总是可读
+     */
+    private static class CachedBodyInputStream extends ServletInputStream {
+
+        private final byte[] body;
 
-            @Override
-            public void setReadListener(ReadListener readListener) {
+        private int pos;
 
+        private CachedBodyInputStream(byte[] body) {
+            this.body = body;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return pos >= body.length;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            try {
+                if (!isFinished()) {
+                    readListener.onDataAvailable();
+                }
+                readListener.onAllDataRead();
+            } catch (IOException e) {
+                readListener.onError(e);
             }
+        }
 
-            @Override
-            public int read() throws IOException {
-                return byteArrayInputStream.read();
+        @Override
+        public int read() {
+            return pos < body.length ? body[pos++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
             }
-        };
-    }
+            if (pos >= body.length) {
+                return -1;
+            }
+            int n = Math.min(len, body.length - pos);
+            System.arraycopy(body, pos, b, off, n);
+            pos += n;
+            return n;
+        }
 
-    @Override
-    public BufferedReader getReader() throws IOException {
-        return new BufferedReader(new InputStreamReader(getInputStream()));
+        @Override
+        public int available() {
+            return body.length - pos;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, body.length - pos));
+            pos += skipped;
+            return skipped;
+        }
     }
 }
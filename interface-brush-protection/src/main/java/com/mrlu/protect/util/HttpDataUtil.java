@@ -1,6 +1,7 @@
 package com.mrlu.protect.util;
 
 import com.alibaba.fastjson.JSON;
+import com.mrlu.protect.request.SignRequestWrapper;
 import org.apache.commons.lang.StringUtils;
 import org.springframework.util.StreamUtils;
 
@@ -21,9 +22,12 @@ public class HttpDataUtil {
      * @param request
      */
     public static SortedMap<String, Object> getBodyParams(HttpServletRequest request) throws IOException {
-         byte[] requestBody = StreamUtils.copyToByteArray(request.getInputStream());
-         String body = new String(requestBody);
-         return JSON.parseObject(body, SortedMap.class);
+        if (request instanceof SignRequestWrapper) {
+            // 已缓存请求体，直接复用解析结果
+            return ((SignRequestWrapper) request).getBodyParams();
+        }
+        byte[] requestBody = StreamUtils.copyToByteArray(request.getInputStream());
+        return JSON.parseObject(requestBody, TreeMap.class);
     }
 
 
@@ -0,0 +1,161 @@
+package com.mrlu.protect.util;
+
+import com.mrlu.protect.constant.SignAlgorithm;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Objects;
+
+/**
+ * @author 简单de快乐
+ *
+ * 可复用的流式摘要：字符按UTF-8编码写入内部缓冲区，缓冲区满了再批量送入MessageDigest/Mac，
+ * 不需要先拼出完整的待签名字符串。非线程安全，通过ThreadLocal每个线程持有一个
+ */
+class SignDigest {
+
+    private static final int BUFFER_SIZE = 1024;
+
+    private final MessageDigest messageDigest;
+
+    private final Mac mac;
+
+    /**
+     * 当前Mac初始化使用的密钥
+     */
+    private String secret;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private int pos;
+
+    private SignDigest(MessageDigest messageDigest, Mac mac) {
+        this.messageDigest = messageDigest;
+        this.mac = mac;
+    }
+
+    static SignDigest create(SignAlgorithm algorithm) {
+        try {
+            if (algorithm == SignAlgorithm.HMAC_SHA256) {
+                return new SignDigest(null, Mac.getInstance("HmacSHA256"));
+            }
+            return new SignDigest(MessageDigest.getInstance("MD5"), null);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 开始一次新的摘要计算，密钥变化时才重新初始化Mac
+     */
+    SignDigest reset(String secret) {
+        pos = 0;
+        if (messageDigest != null) {
+            messageDigest.reset();
+            return this;
+        }
+        if (this.secret == null || !Objects.equals(this.secret, secret)) {
+            try {
+                mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), mac.getAlgorithm()));
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+            this.secret = secret;
+        } else {
+            mac.reset();
+        }
+        return this;
+    }
+
+    void writeAscii(char c) {
+        if (pos == BUFFER_SIZE) {
+            flush();
+        }
+        buffer[pos++] = (byte) c;
+    }
+
+    void write(long value) {
+        if (value == Long.MIN_VALUE) {
+            write(String.valueOf(value));
+            return;
+        }
+        if (value < 0) {
+            writeAscii('-');
+            value = -value;
+        }
+        long divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            writeAscii((char) ('0' + value / divisor % 10));
+        }
+    }
+
+    /**
+     * 按UTF-8编码写入字符串，与String.getBytes(UTF_8)结果一致
+     */
+    void write(String s) {
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                writeAscii(c);
+            } else if (c < 0x800) {
+                writeByte(0xc0 | (c >> 6));
+                writeByte(0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                writeByte(0xf0 | (codePoint >> 18));
+                writeByte(0x80 | ((codePoint >> 12) & 0x3f));
+                writeByte(0x80 | ((codePoint >> 6) & 0x3f));
+                writeByte(0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // 不成对的代理字符，与JDK编码器一致替换为'?'
+                writeAscii('?');
+            } else {
+                writeByte(0xe0 | (c >> 12));
+                writeByte(0x80 | ((c >> 6) & 0x3f));
+                writeByte(0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    void write(byte[] bytes) {
+        flush();
+        update(bytes, 0, bytes.length);
+    }
+
+    /**
+     * 结束计算，返回摘要
+     */
+    byte[] digest() {
+        flush();
+        return messageDigest != null ? messageDigest.digest() : mac.doFinal();
+    }
+
+    private void writeByte(int b) {
+        if (pos == BUFFER_SIZE) {
+            flush();
+        }
+        buffer[pos++] = (byte) b;
+    }
+
+    private void flush() {
+        if (pos > 0) {
+            update(buffer, 0, pos);
+            pos = 0;
+        }
+    }
+
+    private void update(byte[] bytes, int offset, int length) {
+        if (messageDigest != null) {
+            messageDigest.update(bytes, offset, length);
+        } else {
+            mac.update(bytes, offset, length);
+        }
+    }
+}
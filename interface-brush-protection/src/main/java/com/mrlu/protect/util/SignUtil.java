@@ -1,38 +1,156 @@
 package com.mrlu.protect.util;
 
-import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.JSON;
+import com.mrlu.protect.constant.SignAlgorithm;
 import com.mrlu.protect.entity.RequestHeader;
-import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.StringUtils;
-import org.springframework.util.DigestUtils;
 
+import java.security.MessageDigest;
+import java.util.Map;
 import java.util.SortedMap;
 
 /**
  * @author 简单de快乐
  */
-@Slf4j
 public class SignUtil {
 
+    private static final ThreadLocal<SignDigest> MD5_DIGEST = ThreadLocal.withInitial(() -> SignDigest.create(SignAlgorithm.MD5));
+
+    private static final ThreadLocal<SignDigest> HMAC_SHA256_DIGEST = ThreadLocal.withInitial(() -> SignDigest.create(SignAlgorithm.HMAC_SHA256));
+
     /**
      * 验证签名
      * 验证算法：把timestamp + JsonUtil.object2Json(SortedMap)合成字符串，然后MD5
      */
     public static boolean verifySign(SortedMap<String, Object> paramMap, RequestHeader requestHeader) {
-        // 通常还会加个签名的key来加密
-        String params = requestHeader.getNonce() + requestHeader.getTimestamp() + JSONObject.toJSON(paramMap);
-        return verifySign(params, requestHeader);
+        return verifySign(paramMap, requestHeader, SignAlgorithm.MD5, null);
+    }
+
+    /**
+     * 验证签名
+     * 待签名内容仍然是nonce + timestamp + JSONObject.toJSON(SortedMap)，但不再拼出完整字符串，
+     * 而是按顺序把各部分的UTF-8字节直接写入摘要，最后与客户端签名做常量时间比较
+     *
+     * @param algorithm 签名算法
+     * @param secret    HMAC_SHA256时使用的服务端密钥
+     */
+    public static boolean verifySign(SortedMap<String, Object> paramMap, RequestHeader requestHeader,
+                                     SignAlgorithm algorithm, String secret) {
+        byte[] expected = decodeHex(requestHeader.getSign());
+        if (expected == null) {
+            return false;
+        }
+        SignDigest digest = digest(algorithm, secret);
+        digest.write(String.valueOf(requestHeader.getNonce()));
+        digest.write(String.valueOf(requestHeader.getTimestamp()));
+        writeJson(digest, paramMap);
+        return MessageDigest.isEqual(digest.digest(), expected);
     }
 
     public static boolean verifySign(String params, RequestHeader requestHeader) {
-        log.info("客户端签名：{}", requestHeader.getSign());
         if (StringUtils.isEmpty(params)) {
             return false;
         }
-        log.info("客户端上传内容: {}", params);
-        String paramsSign = DigestUtils.md5DigestAsHex(params.getBytes());
-        log.info("客户端上传内容加密后的签名结果: {}", paramsSign);
-        return requestHeader.getSign().equals(paramsSign);
+        byte[] expected = decodeHex(requestHeader.getSign());
+        if (expected == null) {
+            return false;
+        }
+        SignDigest digest = digest(SignAlgorithm.MD5, null);
+        digest.write(params);
+        return MessageDigest.isEqual(digest.digest(), expected);
+    }
+
+    private static SignDigest digest(SignAlgorithm algorithm, String secret) {
+        if (algorithm == SignAlgorithm.HMAC_SHA256) {
+            if (StringUtils.isEmpty(secret)) {
+                throw new IllegalArgumentException("HMAC_SHA256 sign requires a secret");
+            }
+            return HMAC_SHA256_DIGEST.get().reset(secret);
+        }
+        return MD5_DIGEST.get().reset(null);
+    }
+
+    /**
+     * 与JSONObject.toJSON(paramMap).toString()输出一致：
+     * key按TreeMap顺序，值为null的项跳过，普通字符串、整数、布尔直接写入，其余类型交给fastjson序列化
+     */
+    private static void writeJson(SignDigest digest, SortedMap<String, Object> paramMap) {
+        if (paramMap == null) {
+            digest.write("null");
+            return;
+        }
+        digest.writeAscii('{');
+        boolean first = true;
+        for (Map.Entry<String, Object> entry : paramMap.entrySet()) {
+            Object value = entry.getValue();
+            if (value == null) {
+                continue;
+            }
+            if (!first) {
+                digest.writeAscii(',');
+            }
+            first = false;
+            writeString(digest, String.valueOf(entry.getKey()));
+            digest.writeAscii(':');
+            if (value instanceof String) {
+                writeString(digest, (String) value);
+            } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+                digest.write(((Number) value).longValue());
+            } else if (value instanceof Boolean) {
+                digest.write(value.toString());
+            } else {
+                digest.write(JSON.toJSONBytes(value));
+            }
+        }
+        digest.writeAscii('}');
+    }
+
+    /**
+     * 不需要转义的字符串直接写入，否则交给fastjson按相同规则转义
+     */
+    private static void writeString(SignDigest digest, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x20 || c == '"' || c == '\\' || c == 0x7f || c == 0x2028 || c == 0x2029) {
+                digest.write(JSON.toJSONString(s));
+                return;
+            }
+        }
+        digest.writeAscii('"');
+        digest.write(s);
+        digest.writeAscii('"');
+    }
+
+    /**
+     * 解析客户端签名的十六进制字符串，格式不合法时返回null
+     */
+    private static byte[] decodeHex(String hex) {
+        if (hex == null || hex.isEmpty() || (hex.length() & 1) != 0) {
+            return null;
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = hexDigit(hex.charAt(2 * i));
+            int low = hexDigit(hex.charAt(2 * i + 1));
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+
+    /**
+     * 与md5DigestAsHex一致只接受小写
+     */
+    private static int hexDigit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        return -1;
     }
 
 }
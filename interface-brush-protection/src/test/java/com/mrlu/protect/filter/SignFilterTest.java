@@ -0,0 +1,192 @@
+package com.mrlu.protect.filter;
+
+import com.alibaba.fastjson.JSON;
+import com.mrlu.protect.nonce.NonceStore;
+import com.mrlu.response.ApiErrorCode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockFilterConfig;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.DigestUtils;
+
+import javax.servlet.ServletInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author 简单de快乐
+ *
+ * 非法请求在读取请求体之前就被拒绝
+ */
+class SignFilterTest {
+
+    private static final String BODY = "{\"id\":\"1\",\"name\":\"手机\"}";
+
+    private static final String FAKE_SIGN = "0123456789abcdef0123456789abcdef";
+
+    private SignFilter signFilter;
+
+    private Set<String> usedNonces;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MockFilterConfig filterConfig = new MockFilterConfig();
+        filterConfig.addInitParameter("signMaxTime", "60");
+        filterConfig.addInitParameter("signAlgorithm", "MD5");
+        filterConfig.addInitParameter("maxBodySize", "1024");
+        signFilter = new SignFilter();
+        signFilter.init(filterConfig);
+        usedNonces = new HashSet<>();
+        ReflectionTestUtils.setField(signFilter, "nonceStore", new NonceStore() {
+            @Override
+            public boolean tryAcquire(String nonce, long ttl, TimeUnit unit) {
+                return usedNonces.add(nonce);
+            }
+
+            @Override
+            public List<Boolean> tryAcquire(List<String> nonces, long ttl, TimeUnit unit) {
+                return nonces.stream().map(usedNonces::add).collect(Collectors.toList());
+            }
+        });
+    }
+
+    @Test
+    void missingHeadersAreRejected() throws Exception {
+        BodyRecordingRequest request = request("POST", "n1", null);
+        assertRejected(request, ApiErrorCode.AUTHENTICATION_ARGS_EMPTY);
+        assertFalse(usedNonces.contains("n1"));
+    }
+
+    @Test
+    void nonNumericTimeIsRejected() throws Exception {
+        BodyRecordingRequest request = request("POST", "n1", "abc");
+        assertRejected(request, ApiErrorCode.ARGS_ERROR);
+    }
+
+    @Test
+    void expiredTimeIsRejected() throws Exception {
+        String time = String.valueOf(System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(120));
+        BodyRecordingRequest request = request("POST", "n1", time);
+        assertRejected(request, ApiErrorCode.SIGN_EXPIRED);
+        assertFalse(usedNonces.contains("n1"));
+    }
+
+    @Test
+    void unsupportedMethodIsRejectedWithoutUsingNonce() throws Exception {
+        BodyRecordingRequest request = request("PUT", "n1", String.valueOf(System.currentTimeMillis()));
+        assertRejected(request, ApiErrorCode.AUTHENTICATION_ERROR);
+        assertFalse(usedNonces.contains("n1"));
+    }
+
+    @Test
+    void oversizedBodyIsRejectedWithoutUsingNonce() throws Exception {
+        BodyRecordingRequest request = request("POST", "n1", String.valueOf(System.currentTimeMillis()));
+        request.declaredLength = 2L * 1024 * 1024 * 1024;
+        assertRejected(request, ApiErrorCode.ARGS_ERROR);
+        assertFalse(usedNonces.contains("n1"));
+    }
+
+    @Test
+    void replayedNonceIsRejected() throws Exception {
+        usedNonces.add("n1");
+        BodyRecordingRequest request = request("POST", "n1", String.valueOf(System.currentTimeMillis()));
+        assertRejected(request, ApiErrorCode.REPLAY_ERROR);
+    }
+
+    @Test
+    void validSignReachesChain() throws Exception {
+        String time = String.valueOf(System.currentTimeMillis());
+        String sign = DigestUtils.md5DigestAsHex(("n1" + time + BODY).getBytes(StandardCharsets.UTF_8));
+        BodyRecordingRequest request = request("POST", "n1", time, sign);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        signFilter.doFilter(request, response, chain);
+
+        assertNotNull(chain.getRequest());
+        assertEquals(0, response.getContentLength());
+        assertTrue(request.bodyRead);
+    }
+
+    @Test
+    void wrongSignIsRejectedAfterReadingBody() throws Exception {
+        BodyRecordingRequest request = request("POST", "n1", String.valueOf(System.currentTimeMillis()), FAKE_SIGN);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        signFilter.doFilter(request, response, chain);
+
+        assertNull(chain.getRequest());
+        assertEquals(ApiErrorCode.AUTHENTICATION_ERROR.getCode(), code(response));
+    }
+
+    private void assertRejected(BodyRecordingRequest request, ApiErrorCode errorCode) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        signFilter.doFilter(request, response, chain);
+
+        assertNull(chain.getRequest());
+        assertEquals(errorCode.getCode(), code(response));
+        assertFalse(request.bodyRead);
+    }
+
+    private static long code(MockHttpServletResponse response) throws Exception {
+        return JSON.parseObject(response.getContentAsString(StandardCharsets.UTF_8)).getLongValue("code");
+    }
+
+    private static BodyRecordingRequest request(String method, String nonce, String time) {
+        return request(method, nonce, time, FAKE_SIGN);
+    }
+
+    private static BodyRecordingRequest request(String method, String nonce, String time, String sign) {
+        BodyRecordingRequest request = new BodyRecordingRequest(method);
+        request.setContentType("application/json");
+        request.setCharacterEncoding("UTF-8");
+        request.setContent(BODY.getBytes(StandardCharsets.UTF_8));
+        request.addHeader("x-nonce", nonce);
+        if (time != null) {
+            request.addHeader("x-time", time);
+        }
+        request.addHeader("x-sign", sign);
+        return request;
+    }
+
+    /**
+     * 记录请求体是否被读取
+     */
+    private static class BodyRecordingRequest extends MockHttpServletRequest {
+
+        private boolean bodyRead;
+
+        private long declaredLength = -1;
+
+        BodyRecordingRequest(String method) {
+            super(method, "/sign/test");
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return declaredLength < 0 ? super.getContentLengthLong() : declaredLength;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            bodyRead = true;
+            return super.getInputStream();
+        }
+    }
+}
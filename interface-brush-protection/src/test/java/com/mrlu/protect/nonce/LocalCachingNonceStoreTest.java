@@ -0,0 +1,92 @@
+package com.mrlu.protect.nonce;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author 简单de快乐
+ *
+ * 本地缓存命中时直接判定为重放，不再访问delegate
+ */
+class LocalCachingNonceStoreTest {
+
+    private RecordingNonceStore delegate;
+
+    private LocalCachingNonceStore nonceStore;
+
+    @BeforeEach
+    void setUp() {
+        delegate = new RecordingNonceStore();
+        nonceStore = new LocalCachingNonceStore(delegate, new LocalNonceCache(100, 60, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void localHitRejectsWithoutCallingDelegate() {
+        assertTrue(nonceStore.tryAcquire("a", 60, TimeUnit.SECONDS));
+        assertEquals(1, delegate.calls.size());
+
+        assertFalse(nonceStore.tryAcquire("a", 60, TimeUnit.SECONDS));
+        assertEquals(1, delegate.calls.size());
+    }
+
+    @Test
+    void delegateReplayIsCachedLocally() {
+        // 其他节点已经使用过的nonce
+        delegate.seen.add("b");
+        assertFalse(nonceStore.tryAcquire("b", 60, TimeUnit.SECONDS));
+        assertFalse(nonceStore.tryAcquire("b", 60, TimeUnit.SECONDS));
+        assertEquals(1, delegate.calls.size());
+    }
+
+    @Test
+    void batchForwardsOnlyMissesAndKeepsOrder() {
+        nonceStore.tryAcquire("a", 60, TimeUnit.SECONDS);
+        delegate.seen.add("c");
+        delegate.calls.clear();
+
+        List<Boolean> acquired = nonceStore.tryAcquire(Arrays.asList("a", "b", "c", "d"), 60, TimeUnit.SECONDS);
+
+        assertEquals(Arrays.asList(false, true, false, true), acquired);
+        assertEquals(Arrays.asList("b", "c", "d"), delegate.calls);
+
+        delegate.calls.clear();
+        assertEquals(Arrays.asList(false, false), nonceStore.tryAcquire(Arrays.asList("b", "d"), 60, TimeUnit.SECONDS));
+        assertTrue(delegate.calls.isEmpty());
+    }
+
+    /**
+     * 记录调用的内存nonce存储
+     */
+    private static class RecordingNonceStore implements NonceStore {
+
+        private final Set<String> seen = new HashSet<>();
+
+        private final List<String> calls = new ArrayList<>();
+
+        @Override
+        public boolean tryAcquire(String nonce, long ttl, TimeUnit unit) {
+            calls.add(nonce);
+            return seen.add(nonce);
+        }
+
+        @Override
+        public List<Boolean> tryAcquire(List<String> nonces, long ttl, TimeUnit unit) {
+            List<Boolean> acquired = new ArrayList<>(nonces.size());
+            for (String nonce : nonces) {
+                acquired.add(tryAcquire(nonce, ttl, unit));
+            }
+            return acquired;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.mrlu.protect.nonce;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author 简单de快乐
+ *
+ * nonce校验只发送一条SET NX PX命令
+ */
+class RedisNonceStoreTest {
+
+    private RedisTemplate<String, Object> redisTemplate;
+
+    private ValueOperations<String, Object> valueOperations;
+
+    private RedisNonceStore nonceStore;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = mock(RedisTemplate.class);
+        valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        nonceStore = new RedisNonceStore(redisTemplate);
+    }
+
+    @Test
+    void firstUseSetsKeyWithExpiration() {
+        when(valueOperations.setIfAbsent("x-nonce-key-a", "a", Duration.ofMillis(60000))).thenReturn(true);
+        assertTrue(nonceStore.tryAcquire("a", 60, TimeUnit.SECONDS));
+        verify(valueOperations).setIfAbsent("x-nonce-key-a", "a", Duration.ofMillis(60000));
+    }
+
+    @Test
+    void existingKeyIsReplay() {
+        when(valueOperations.setIfAbsent(any(), any(), any(Duration.class))).thenReturn(false);
+        assertFalse(nonceStore.tryAcquire("a", 60, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void nullReplyIsReplay() {
+        // pipeline或事务中setIfAbsent返回null，不能当成首次使用
+        when(valueOperations.setIfAbsent(any(), any(), any(Duration.class))).thenReturn(null);
+        assertFalse(nonceStore.tryAcquire("a", 60, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void emptyBatchDoesNotTouchRedis() {
+        assertTrue(nonceStore.tryAcquire(Collections.emptyList(), 60, TimeUnit.SECONDS).isEmpty());
+        verifyNoInteractions(redisTemplate);
+    }
+}
@@ -0,0 +1,134 @@
+package com.mrlu.protect.request;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.util.StreamUtils;
+
+import javax.servlet.ServletInputStream;
+import java.io.BufferedReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.SortedMap;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author 简单de快乐
+ *
+ * 请求体缓存后可以重复读取
+ */
+class SignRequestWrapperTest {
+
+    private static final String BODY = "{\"name\":\"手机\",\"id\":1}";
+
+    private static MockHttpServletRequest jsonRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/sign/test");
+        request.setContentType("application/json");
+        request.setCharacterEncoding("UTF-8");
+        request.setContent(BODY.getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+
+    @Test
+    void bodyCanBeReadMoreThanOnce() throws Exception {
+        SignRequestWrapper wrapper = new SignRequestWrapper(jsonRequest());
+        byte[] expected = BODY.getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(expected, StreamUtils.copyToByteArray(wrapper.getInputStream()));
+        assertArrayEquals(expected, StreamUtils.copyToByteArray(wrapper.getInputStream()));
+        try (BufferedReader reader = wrapper.getReader()) {
+            assertEquals(BODY, reader.lines().collect(Collectors.joining("\n")));
+        }
+        assertTrue(wrapper.getInputStream().isFinished() || wrapper.getInputStream().isReady());
+    }
+
+    @Test
+    void bodyParamsAreParsedOnceAndSorted() throws Exception {
+        SignRequestWrapper wrapper = new SignRequestWrapper(jsonRequest());
+        SortedMap<String, Object> params = wrapper.getBodyParams();
+        assertEquals("id", params.firstKey());
+        assertEquals("手机", params.get("name"));
+        assertTrue(params == wrapper.getBodyParams());
+        // 签名校验读取过请求体后，controller仍能读到完整的请求体
+        assertArrayEquals(BODY.getBytes(StandardCharsets.UTF_8), StreamUtils.copyToByteArray(wrapper.getInputStream()));
+    }
+
+    @Test
+    void formParamsComeFromRequestParameters() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/sign/test");
+        request.setContentType("application/x-www-form-urlencoded");
+        request.addParameter("name", "手机");
+        request.addParameter("id", "1");
+        SignRequestWrapper wrapper = new SignRequestWrapper(request);
+        SortedMap<String, Object> params = wrapper.getBodyParams();
+        assertEquals("1", params.get("id"));
+        assertEquals("手机", params.get("name"));
+    }
+
+    @Test
+    void declaredLengthAboveLimitIsRejectedBeforeReading() {
+        DeclaredLengthRequest request = new DeclaredLengthRequest(2L * 1024 * 1024 * 1024);
+        SignRequestWrapper wrapper = new SignRequestWrapper(request, 1024);
+        assertThrows(RequestBodyTooLargeException.class, wrapper::getRequestBody);
+        assertFalse(request.streamOpened);
+    }
+
+    @Test
+    void declaredLengthLongerThanBodyReadsActualBody() throws Exception {
+        DeclaredLengthRequest request = new DeclaredLengthRequest(1024);
+        SignRequestWrapper wrapper = new SignRequestWrapper(request, 1024);
+        assertArrayEquals(BODY.getBytes(StandardCharsets.UTF_8), wrapper.getRequestBody());
+        assertEquals("手机", wrapper.getBodyParams().get("name"));
+    }
+
+    @Test
+    void undeclaredOrUnderstatedBodyAboveLimitIsRejected() throws Exception {
+        byte[] body = new byte[10000];
+        Arrays.fill(body, (byte) 'a');
+        assertThrows(RequestBodyTooLargeException.class, () -> new SignRequestWrapper(new DeclaredLengthRequest(-1, body), 9999).getRequestBody());
+        assertArrayEquals(body, new SignRequestWrapper(new DeclaredLengthRequest(-1, body), 10000).getRequestBody());
+        assertThrows(RequestBodyTooLargeException.class, () -> new SignRequestWrapper(new DeclaredLengthRequest(10, body), 5000).getRequestBody());
+        assertArrayEquals(body, new SignRequestWrapper(new DeclaredLengthRequest(10, body), 10000).getRequestBody());
+    }
+
+    /**
+     * Content-Length与实际请求体不一致的请求
+     */
+    private static class DeclaredLengthRequest extends MockHttpServletRequest {
+
+        private final long declaredLength;
+
+        private boolean streamOpened;
+
+        DeclaredLengthRequest(long declaredLength) {
+            this(declaredLength, BODY.getBytes(StandardCharsets.UTF_8));
+        }
+
+        DeclaredLengthRequest(long declaredLength, byte[] body) {
+            super("POST", "/sign/test");
+            this.declaredLength = declaredLength;
+            setContentType("application/json");
+            setContent(body);
+        }
+
+        @Override
+        public int getContentLength() {
+            return (int) Math.min(declaredLength, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return declaredLength;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            streamOpened = true;
+            return super.getInputStream();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.mrlu.protect.util;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.mrlu.protect.constant.SignAlgorithm;
+import com.mrlu.protect.entity.RequestHeader;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.DigestUtils;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author 简单de快乐
+ *
+ * 流式签名与原来nonce + timestamp + JSONObject.toJSON(map)字符串签名的兼容性
+ */
+class SignUtilTest {
+
+    private static final String NONCE = "123456";
+
+    private static final long TIMESTAMP = 1686000000000L;
+
+    @SuppressWarnings("unchecked")
+    private static List<SortedMap<String, Object>> paramMaps() {
+        List<SortedMap<String, Object>> maps = new ArrayList<>();
+        maps.add(new TreeMap<>());
+        maps.add(null);
+        TreeMap<String, Object> simple = new TreeMap<>();
+        simple.put("id", "1");
+        simple.put("name", "手机😀");
+        simple.put("price", "3500");
+        maps.add(simple);
+        String body = "{\"a\":1,\"b\":\"x\\\"y\\n\\u2028\\u007f\",\"c\":{\"z\":1,\"y\":[1,2.5,null,\"q\"]},\"d\":null,"
+                + "\"e\":true,\"f\":3.50,\"g\":12345678901234,\"h\":-5,\"i\":\"a/b<>&'\",\"j\":99999999999999999999999}";
+        maps.add(JSON.parseObject(body.getBytes(StandardCharsets.UTF_8), TreeMap.class));
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            large.append("测试x");
+        }
+        TreeMap<String, Object> big = new TreeMap<>();
+        big.put("content", large.toString());
+        maps.add(big);
+        return maps;
+    }
+
+    private static String canonical(SortedMap<String, Object> paramMap) {
+        return NONCE + TIMESTAMP + JSONObject.toJSON(paramMap);
+    }
+
+    private static RequestHeader header(String sign) {
+        return RequestHeader.builder().nonce(NONCE).timestamp(TIMESTAMP).sign(sign).build();
+    }
+
+    @Test
+    void digestMatchesStringMd5() {
+        for (SortedMap<String, Object> paramMap : paramMaps()) {
+            String canonical = canonical(paramMap);
+            SignDigest digest = SignDigest.create(SignAlgorithm.MD5).reset(null);
+            digest.write(canonical);
+            assertArrayEquals(DigestUtils.md5Digest(canonical.getBytes(StandardCharsets.UTF_8)), digest.digest());
+        }
+    }
+
+    @Test
+    void md5SignIsCompatibleWithOldCanonicalString() {
+        for (SortedMap<String, Object> paramMap : paramMaps()) {
+            String sign = DigestUtils.md5DigestAsHex(canonical(paramMap).getBytes(StandardCharsets.UTF_8));
+            assertTrue(SignUtil.verifySign(paramMap, header(sign)));
+        }
+    }
+
+    @Test
+    void hmacSha256SignUsesServerSecret() throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec("secret".getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        for (SortedMap<String, Object> paramMap : paramMaps()) {
+            byte[] expected = mac.doFinal(canonical(paramMap).getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : expected) {
+                hex.append(String.format("%02x", b));
+            }
+            assertTrue(SignUtil.verifySign(paramMap, header(hex.toString()), SignAlgorithm.HMAC_SHA256, "secret"));
+            assertFalse(SignUtil.verifySign(paramMap, header(hex.toString()), SignAlgorithm.HMAC_SHA256, "other"));
+            // 密钥切换回来后重新初始化
+            assertTrue(SignUtil.verifySign(paramMap, header(hex.toString()), SignAlgorithm.HMAC_SHA256, "secret"));
+        }
+    }
+
+    @Test
+    void rejectsTamperedOrMalformedSign() {
+        TreeMap<String, Object> paramMap = new TreeMap<>();
+        paramMap.put("id", "1");
+        String sign = DigestUtils.md5DigestAsHex(canonical(paramMap).getBytes(StandardCharsets.UTF_8));
+        paramMap.put("id", "2");
+        assertFalse(SignUtil.verifySign(paramMap, header(sign)));
+        paramMap.put("id", "1");
+        assertFalse(SignUtil.verifySign(paramMap, header(sign.toUpperCase())));
+        assertFalse(SignUtil.verifySign(paramMap, header(sign.substring(1))));
+        assertFalse(SignUtil.verifySign(paramMap, header("zz" + sign.substring(2))));
+        assertFalse(SignUtil.verifySign(paramMap, header(null)));
+    }
+}
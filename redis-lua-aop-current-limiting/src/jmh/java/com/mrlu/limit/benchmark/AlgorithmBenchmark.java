@@ -0,0 +1,52 @@
+package com.mrlu.limit.benchmark;
+
+import com.mrlu.limit.constant.LimitAlgorithm;
+import com.mrlu.redis.RedisScriptRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author 简单de快乐
+ *
+ * 固定窗口 vs 滑动窗口 vs 令牌桶脚本的开销
+ * count足够大，保证每次都走放行分支（写操作最多的路径）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AlgorithmBenchmark {
+
+    private static final int COUNT = 1000000;
+
+    private static final int PERIOD = 1;
+
+    @Param({"FIXED_WINDOW", "SLIDING_WINDOW", "TOKEN_BUCKET"})
+    private LimitAlgorithm algorithm;
+
+    private RedisScript<Long> script;
+
+    private List<String> keys;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Setup
+    public void setup(EmbeddedRedisState redis) {
+        RedisScriptRegistry registry = new RedisScriptRegistry(redis.redisTemplate);
+        script = registry.register(algorithm.name(), algorithm.getScript(), Long.class);
+        registry.load();
+        keys = Collections.singletonList("bench-" + algorithm.name());
+    }
+
+    @Benchmark
+    public Long acquire(EmbeddedRedisState redis) {
+        return redis.redisTemplate.execute(script, keys, COUNT, PERIOD, COUNT, "bench:" + sequence.incrementAndGet());
+    }
+}
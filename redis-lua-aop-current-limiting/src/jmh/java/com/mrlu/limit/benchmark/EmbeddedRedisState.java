@@ -0,0 +1,46 @@
+package com.mrlu.limit.benchmark;
+
+import com.mrlu.limit.config.RedisConfig;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+
+/**
+ * @author 简单de快乐
+ *
+ * 基准测试使用的内嵌redis，每个fork启动一次
+ * RedisTemplate直接复用RedisConfig，序列化方式和线上一致
+ */
+@State(Scope.Benchmark)
+public class EmbeddedRedisState {
+
+    private static final int PORT = 16379;
+
+    private RedisServer redisServer;
+
+    private LettuceConnectionFactory connectionFactory;
+
+    RedisTemplate<String, Object> redisTemplate;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        redisServer = new RedisServer(PORT);
+        redisServer.start();
+        connectionFactory = new LettuceConnectionFactory("127.0.0.1", PORT);
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new RedisConfig().redisTemplate(connectionFactory);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+}
@@ -0,0 +1,58 @@
+package com.mrlu.limit.benchmark;
+
+import com.mrlu.limit.anno.Limit;
+import com.mrlu.limit.core.LimitMetadata;
+import org.apache.commons.lang.StringUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author 简单de快乐
+ *
+ * 每次请求反射解析@Limit并拼接key vs 按方法缓存的LimitMetadata
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetadataBenchmark {
+
+    private Method method;
+
+    private final Map<Method, LimitMetadata> metadataCache = new ConcurrentHashMap<>();
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        method = LimitedTarget.class.getMethod("limited");
+        metadataCache.put(method, new LimitMetadata(method, method.getAnnotation(Limit.class), null));
+    }
+
+    @Benchmark
+    public String reflect() {
+        Limit annotation = method.getAnnotation(Limit.class);
+        String key = annotation.key();
+        if (StringUtils.isEmpty(key)) {
+            key = StringUtils.upperCase(method.getName());
+        }
+        String prefix = annotation.prefix();
+        return StringUtils.isEmpty(prefix) ? key : prefix + "-" + key;
+    }
+
+    @Benchmark
+    public String cached() {
+        return metadataCache.get(method).getStaticKey();
+    }
+
+    public static class LimitedTarget {
+
+        @Limit(key = "bench", prefix = "metadata", period = 10, count = 100)
+        public void limited() {
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.mrlu.limit.benchmark;
+
+import com.mrlu.limit.constant.LimitAlgorithm;
+import com.mrlu.redis.RedisScriptRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author 简单de快乐
+ *
+ * 每次请求构建脚本 vs 注册中心缓存脚本（sha1只计算一次）
+ * buildScript/cachedScript只测本地开销，evalBuiltScript/evalCachedScript包含一次redis调用
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScriptBenchmark {
+
+    private static final String SCRIPT = LimitAlgorithm.FIXED_WINDOW.getScript();
+
+    private static final List<String> KEYS = Collections.singletonList("bench-script");
+
+    private RedisScriptRegistry registry;
+
+    @Setup
+    public void setup(EmbeddedRedisState redis) {
+        registry = new RedisScriptRegistry(redis.redisTemplate);
+        registry.register(LimitAlgorithm.FIXED_WINDOW.name(), SCRIPT, Long.class);
+        registry.load();
+    }
+
+    @Benchmark
+    public String buildScript() {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>(SCRIPT, Long.class);
+        return script.getSha1();
+    }
+
+    @Benchmark
+    public String cachedScript() {
+        return registry.get(LimitAlgorithm.FIXED_WINDOW.name()).getSha1();
+    }
+
+    @Benchmark
+    public Long evalBuiltScript(EmbeddedRedisState redis) {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>(SCRIPT, Long.class);
+        return redis.redisTemplate.execute(script, KEYS, Integer.MAX_VALUE, 1);
+    }
+
+    @Benchmark
+    public Long evalCachedScript(EmbeddedRedisState redis) {
+        RedisScript<Long> script = registry.get(LimitAlgorithm.FIXED_WINDOW.name());
+        return redis.redisTemplate.execute(script, KEYS, Integer.MAX_VALUE, 1);
+    }
+}
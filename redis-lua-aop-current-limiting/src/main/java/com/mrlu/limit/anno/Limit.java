@@ -1,5 +1,6 @@
 package com.mrlu.limit.anno;
 
+import com.mrlu.limit.constant.LimitAlgorithm;
 import com.mrlu.limit.constant.LimitType;
 
 import java.lang.annotation.*;
@@ -11,6 +12,7 @@ import java.lang.annotation.*;
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.METHOD)
 @Documented
+@Repeatable(Limits.class)
 public @interface Limit {
 
     /**
@@ -20,6 +22,7 @@ public @interface Limit {
 
     /**
      * key
+     * 限流类型为EXPRESSION时为SpEL表达式，如#userId
      */
     String key() default "";
 
@@ -41,9 +44,29 @@ public @interface Limit {
     int count();
 
     /**
-     * 限流的类型（用户自定义key或者ip）
+     * 限流的类型（用户自定义key、ip或者SpEL表达式）
      * @return
      */
     LimitType limitType() default LimitType.CUSTOMER;
 
+    /**
+     * 限流算法（固定窗口、滑动窗口、令牌桶）
+     * @return
+     */
+    LimitAlgorithm algorithm() default LimitAlgorithm.FIXED_WINDOW;
+
+    /**
+     * 令牌桶容量，允许的最大突发请求数，小于等于0时取count
+     * 仅在令牌桶算法下生效
+     * @return
+     */
+    int burst() default 0;
+
+    /**
+     * 租约大小：每个节点一次从redis预取的许可数，之后在本地扣减，用完或窗口过期才再访问redis
+     * 小于等于0时不开启，仅在固定窗口算法、且方法上只有一个@Limit时生效
+     * @return
+     */
+    int lease() default 0;
+
 }
@@ -0,0 +1,18 @@
+package com.mrlu.limit.anno;
+
+import java.lang.annotation.*;
+
+/**
+ * @author 简单de快乐
+ *
+ * 多维度组合限流，@Limit的容器注解
+ * 方法上标注多个@Limit时，所有维度在一次lua调用中原子地检查，全部通过才会同时计数
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+@Documented
+public @interface Limits {
+
+    Limit[] value();
+
+}
@@ -1,9 +1,16 @@
 package com.mrlu.limit.aspect;
 
 import com.mrlu.limit.anno.Limit;
-import com.mrlu.limit.constant.LimitType;
+import com.mrlu.limit.config.LimitFallbackProperties;
+import com.mrlu.limit.constant.LimitAlgorithm;
+import com.mrlu.limit.core.CompositeLimiter;
+import com.mrlu.limit.core.LeaseLimiter;
+import com.mrlu.limit.core.LimitMetadata;
+import com.mrlu.limit.core.LimitMetrics;
+import com.mrlu.limit.core.LocalLimiter;
+import com.mrlu.limit.core.RedisCircuitBreaker;
+import com.mrlu.redis.RedisScriptRegistry;
 import com.mrlu.response.CommonResults;
-import org.apache.commons.lang.StringUtils;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
@@ -11,15 +18,30 @@ import org.aspectj.lang.reflect.MethodSignature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import javax.annotation.PostConstruct;
 import javax.servlet.http.HttpServletRequest;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author 简单de快乐
@@ -35,69 +57,291 @@ public class LimitAspect {
     @Autowired
     private RedisTemplate redisTemplate;
 
-    @Around("execution(public * *(..)) && @annotation(com.mrlu.limit.anno.Limit)")
+    @Autowired
+    private ReactiveRedisTemplate<String, Object> reactiveRedisTemplate;
+
+    @Autowired
+    private RedisScriptRegistry redisScriptRegistry;
+
+    @Autowired
+    private LeaseLimiter leaseLimiter;
+
+    @Autowired
+    private CompositeLimiter compositeLimiter;
+
+    @Autowired
+    private LocalLimiter localLimiter;
+
+    @Autowired
+    private RedisCircuitBreaker circuitBreaker;
+
+    @Autowired
+    private LimitFallbackProperties fallbackProperties;
+
+    @Autowired
+    private LimitMetrics limitMetrics;
+
+    /**
+     * 每种限流算法对应的脚本，启动时注册一次，避免每次请求都重新构建脚本和计算sha1
+     */
+    private final Map<LimitAlgorithm, RedisScript<Long>> limitScripts = new EnumMap<>(LimitAlgorithm.class);
+
+    /**
+     * 当前节点的标识，和请求序号一起作为滑动窗口中每次请求的唯一成员
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * 方法 -> 解析好的限流元数据
+     */
+    private final Map<Method, LimitMetadata[]> metadataCache = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        for (LimitAlgorithm algorithm : LimitAlgorithm.values()) {
+            limitScripts.put(algorithm, redisScriptRegistry.register(algorithm.name(), algorithm.getScript(), Long.class));
+        }
+    }
+
+    @Around("execution(public * *(..)) && (@annotation(com.mrlu.limit.anno.Limit) || @annotation(com.mrlu.limit.anno.Limits))")
     public Object doAround(ProceedingJoinPoint point) throws Throwable {
         MethodSignature signature = (MethodSignature) point.getSignature();
-        Method method = signature.getMethod();
+        LimitMetadata[] limits = getMetadata(signature.getMethod());
+
+        List<String> keys = new ArrayList<>(limits.length);
+        for (LimitMetadata limit : limits) {
+            keys.add(resolveKey(limit, point));
+        }
+
+        // 返回Mono/Flux/CompletableFuture的方法，限流检查组合进异步流程中，不阻塞调用线程
+        Class<?> returnType = signature.getReturnType();
+        if (Mono.class.isAssignableFrom(returnType)) {
+            return acquireReactive(limits, keys)
+                    .flatMap(rejected -> rejected == 0 ? proceedMono(point) : Mono.just(limited()));
+        }
+        if (Flux.class.isAssignableFrom(returnType)) {
+            return acquireReactive(limits, keys)
+                    .flatMapMany(rejected -> rejected == 0 ? proceedFlux(point) : Flux.just(limited()));
+        }
+        if (CompletableFuture.class.isAssignableFrom(returnType)) {
+            // 切换到boundedElastic线程执行业务方法，避免业务代码阻塞redis客户端的IO线程
+            return acquireReactive(limits, keys)
+                    .publishOn(Schedulers.boundedElastic())
+                    .toFuture()
+                    .thenCompose(rejected -> rejected == 0 ? proceedFuture(point) : CompletableFuture.completedFuture(limited()));
+        }
+
+        if (acquire(limits, keys) == 0) {
+            return point.proceed();
+        }
+        return limited();
+    }
+
+    /**
+     * 获取许可，redis不可用时降级为本地限流
+     * @return 0表示放行，否则为第一个拒绝的维度序号（从1开始）
+     */
+    private int acquire(LimitMetadata[] limits, List<String> keys) {
+        int rejected;
+        if (fallbackProperties.isEnabled() && !circuitBreaker.allowRequest()) {
+            // 熔断中，直接使用本地限流
+            rejected = localAcquire(limits, keys);
+        } else {
+            long start = System.nanoTime();
+            try {
+                rejected = redisAcquire(limits, keys);
+                onRedisSuccess(limits, System.nanoTime() - start);
+            } catch (RuntimeException e) {
+                if (!fallbackProperties.isEnabled()) {
+                    throw e;
+                }
+                onRedisFailure(keys, e);
+                rejected = localAcquire(limits, keys);
+            }
+        }
+        record(limits, keys, rejected);
+        return rejected;
+    }
+
+    /**
+     * 获取许可的非阻塞版本，逻辑和acquire一致
+     */
+    private Mono<Integer> acquireReactive(LimitMetadata[] limits, List<String> keys) {
+        return Mono.defer(() -> {
+            if (fallbackProperties.isEnabled() && !circuitBreaker.allowRequest()) {
+                return Mono.fromSupplier(() -> localAcquire(limits, keys));
+            }
+            long start = System.nanoTime();
+            return redisAcquireReactive(limits, keys)
+                    .doOnNext(rejected -> onRedisSuccess(limits, System.nanoTime() - start))
+                    .onErrorResume(RuntimeException.class, e -> {
+                        if (!fallbackProperties.isEnabled()) {
+                            return Mono.error(e);
+                        }
+                        onRedisFailure(keys, e);
+                        return Mono.fromSupplier(() -> localAcquire(limits, keys));
+                    });
+        }).doOnNext(rejected -> record(limits, keys, rejected));
+    }
+
+    private void onRedisSuccess(LimitMetadata[] limits, long elapsed) {
+        limitMetrics.recordLatency(limits[0].getMetricName(), elapsed);
+        circuitBreaker.onSuccess(elapsed);
+    }
+
+    private void onRedisFailure(List<String> keys, RuntimeException e) {
+        circuitBreaker.onFailure();
+        logger.warn("Redis limiter failed, fallback to local limiter for keys = {}: {}", keys, e.getMessage());
+    }
+
+    private CommonResults limited() {
+        return CommonResults.failed("系统繁忙，请稍后重试。。。");
+    }
 
-        // 获取注解相应参数
-        Limit annotation = method.getAnnotation(Limit.class);
+    @SuppressWarnings("unchecked")
+    private Mono<Object> proceedMono(ProceedingJoinPoint point) {
+        try {
+            return (Mono<Object>) point.proceed();
+        } catch (Throwable e) {
+            return Mono.error(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Flux<Object> proceedFlux(ProceedingJoinPoint point) {
+        try {
+            return (Flux<Object>) point.proceed();
+        } catch (Throwable e) {
+            return Flux.error(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private CompletableFuture<Object> proceedFuture(ProceedingJoinPoint point) {
+        try {
+            return (CompletableFuture<Object>) point.proceed();
+        } catch (Throwable e) {
+            CompletableFuture<Object> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    /**
+     * 记录监控数据：放行时所有维度计为admitted，拒绝时只有拒绝的维度计为rejected
+     */
+    private void record(LimitMetadata[] limits, List<String> keys, int rejected) {
+        if (rejected == 0) {
+            for (int i = 0; i < limits.length; i++) {
+                limitMetrics.record(limits[i].getMetricName(), keys.get(i), true);
+            }
+        } else {
+            limitMetrics.record(limits[rejected - 1].getMetricName(), keys.get(rejected - 1), false);
+        }
+        logger.debug("Access {} for name={} and keys = {}", rejected == 0 ? "admitted" : "rejected", limits[0].getName(), keys);
+    }
 
-        String name = annotation.name();
-        int limitCount = annotation.count();
-        int period = annotation.period();
-        LimitType limitType = annotation.limitType();
-        String prefix = annotation.prefix();
+    /**
+     * 获取方法的限流元数据，第一次访问时解析注解并缓存
+     * 方法上有多个@Limit时按声明顺序返回多个维度
+     */
+    private LimitMetadata[] getMetadata(Method method) {
+        LimitMetadata[] limits = metadataCache.get(method);
+        if (limits == null) {
+            limits = metadataCache.computeIfAbsent(method, m -> {
+                Limit[] annotations = m.getAnnotationsByType(Limit.class);
+                LimitMetadata[] resolved = new LimitMetadata[annotations.length];
+                for (int i = 0; i < annotations.length; i++) {
+                    resolved[i] = new LimitMetadata(m, annotations[i], limitScripts.get(annotations[i].algorithm()));
+                }
+                return resolved;
+            });
+        }
+        return limits;
+    }
 
-        String key;
-        switch (limitType) {
+    /**
+     * 计算限流维度的完整key
+     */
+    private String resolveKey(LimitMetadata limit, ProceedingJoinPoint point) {
+        switch (limit.getLimitType()) {
             case IP:
-                key = getIpAddress();
-                break;
-            case CUSTOMER:
-                key = annotation.key();
-                break;
+                return limit.wholeKey(getIpAddress());
+            case EXPRESSION:
+                return limit.wholeKey(limit.evaluateKey(point.getArgs()));
             default:
-                key = annotation.key();
-                if (StringUtils.isEmpty(key)) {
-                    // 获取用方法名做限流的key
-                    key = StringUtils.upperCase(method.getName());
-                }
+                return limit.getStaticKey();
         }
+    }
 
-        String luaScript = getLimitLuaScript();
-        DefaultRedisScript<Long> script = new DefaultRedisScript<Long>(luaScript, Long.class);
-        script.setResultType(Long.class);
-        String wholeKey = StringUtils.isEmpty(prefix) ? key : prefix + "-" + key;
-        Long count = (Long) redisTemplate.execute(script, Collections.singletonList(wholeKey), limitCount, period);
-        logger.info("Access try count is {} for name={} and key = {}", count, name, key);
-        if (count != null && count.intValue() <= limitCount) {
-            return point.proceed();
+    /**
+     * 通过redis获取许可，多个维度时在一次lua调用中完成
+     * @return 0表示放行，否则为第一个拒绝的维度序号（从1开始）
+     */
+    private int redisAcquire(LimitMetadata[] limits, List<String> keys) {
+        String member = nodeId + ":" + sequence.incrementAndGet();
+        if (limits.length > 1) {
+            return compositeLimiter.tryAcquire(limits, keys, member);
         }
-        return CommonResults.failed("系统繁忙，请稍后重试。。。");
+        LimitMetadata limit = limits[0];
+        String wholeKey = keys.get(0);
+        if (limit.isLeaseEnabled()) {
+            // 租约模式，优先消耗本地预取的许可
+            return leaseLimiter.tryAcquire(wholeKey, limit.getCount(), limit.getPeriod(), limit.getLease()) ? 0 : 1;
+        }
+        Long allowed = (Long) redisTemplate.execute(limit.getScript(), Collections.singletonList(wholeKey),
+                limit.getCount(), limit.getPeriod(), limit.getBurst(), member);
+        return allowed != null && allowed == 1L ? 0 : 1;
     }
 
-    public String getLimitLuaScript() {
-        String lua = "local key = KEYS[1]\n" +
-                "local limit = tonumber(ARGV[1])\n" +
-                "local currentLimit = tonumber(redis.call('get', key) or '0')\n" +
-                "if currentLimit > limit then\n" +
-                "return currentLimit\n" +
-                "end\n" +
-                "currentLimit = redis.call('INCRBY', key, 1)\n" +
-                "if currentLimit == 1 then\n" +
-                "redis.call('EXPIRE', key, ARGV[2])\n" +
-                "end\n" +
-                "return currentLimit\n";
-        return lua;
+    /**
+     * 通过redis获取许可的非阻塞版本
+     * @return 0表示放行，否则为第一个拒绝的维度序号（从1开始）
+     */
+    private Mono<Integer> redisAcquireReactive(LimitMetadata[] limits, List<String> keys) {
+        String member = nodeId + ":" + sequence.incrementAndGet();
+        if (limits.length > 1) {
+            return compositeLimiter.tryAcquireReactive(limits, keys, member);
+        }
+        LimitMetadata limit = limits[0];
+        String wholeKey = keys.get(0);
+        if (limit.isLeaseEnabled()) {
+            // 租约大多数时候在本地命中，续租时才访问redis，放到boundedElastic线程执行
+            return Mono.fromCallable(() -> leaseLimiter.tryAcquire(wholeKey, limit.getCount(), limit.getPeriod(), limit.getLease()) ? 0 : 1)
+                    .subscribeOn(Schedulers.boundedElastic());
+        }
+        return reactiveRedisTemplate.execute(limit.getScript(), Collections.singletonList(wholeKey),
+                        Arrays.asList(limit.getCount(), limit.getPeriod(), limit.getBurst(), member))
+                .next()
+                .map(allowed -> allowed == 1L ? 0 : 1)
+                .defaultIfEmpty(1);
     }
 
+    /**
+     * 本地降级限流，所有维度都通过才放行
+     * @return 0表示放行，否则为第一个拒绝的维度序号（从1开始）
+     */
+    private int localAcquire(LimitMetadata[] limits, List<String> keys) {
+        for (int i = 0; i < limits.length; i++) {
+            LimitMetadata limit = limits[i];
+            if (!localLimiter.tryAcquire(keys.get(i), limit.getCount(), limit.getPeriod(), limit.getBurst())) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
 
     /**
      * 获取ip地址
      */
     public String getIpAddress() {
-        HttpServletRequest request = ((ServletRequestAttributes) RequestContextHolder.getRequestAttributes()).getRequest();
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            throw new IllegalStateException("LimitType.IP requires a servlet request, use LimitType.EXPRESSION for reactive handlers");
+        }
+        HttpServletRequest request = ((ServletRequestAttributes) attributes).getRequest();
         String ip = request.getHeader("x-forwarded-for");
         if (ip == null || ip.length() == 0 || UNKNOWN.equalsIgnoreCase(ip)) {
             ip = request.getHeader("Proxy-Client-IP");
@@ -0,0 +1,48 @@
+package com.mrlu.limit.config;
+
+import lombok.Data;
+import lombok.ToString;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @author 简单de快乐
+ *
+ * redis不可用或者变慢时的本地降级限流配置
+ */
+@Configuration
+@ConfigurationProperties(prefix = "limit.fallback")
+@ToString
+@Data
+public class LimitFallbackProperties {
+
+    /**
+     * 是否开启本地降级限流，关闭时redis异常直接抛出
+     */
+    private boolean enabled = true;
+
+    /**
+     * 集群节点数，每个节点的本地限流额度为count / clusterSize
+     */
+    private int clusterSize = 1;
+
+    /**
+     * redis调用耗时超过该值（毫秒）记为一次慢调用，慢调用和异常一样计入熔断
+     */
+    private long slowThreshold = 200;
+
+    /**
+     * 连续失败（异常或慢调用）多少次后熔断
+     */
+    private int failureThreshold = 5;
+
+    /**
+     * 熔断持续时间（毫秒），期间直接使用本地限流，结束后放一个请求去探测redis
+     */
+    private long openDuration = 5000;
+
+    /**
+     * 本地限流最多保存的key数量
+     */
+    private int maxKeys = 10000;
+}
@@ -0,0 +1,78 @@
+package com.mrlu.limit.constant;
+
+/**
+ * @author 简单de快乐
+ *
+ * 限流算法，每种算法对应一个原子执行的lua脚本
+ * 脚本参数统一为：KEYS[1]=限流key，ARGV[1]=count，ARGV[2]=period(秒)，ARGV[3]=burst，ARGV[4]=本次请求的唯一标识
+ * 脚本返回值统一为：1放行，0拒绝
+ * 滑动窗口和令牌桶使用redis的TIME作为当前时间，避免多个节点之间的时钟偏差（要求redis 5.0+，脚本按效果复制）
+ */
+public enum LimitAlgorithm {
+
+    /**
+     * 固定窗口：窗口内计数，窗口边界处最多可能放行2倍的count
+     */
+    FIXED_WINDOW("local key = KEYS[1]\n" +
+            "local limit = tonumber(ARGV[1])\n" +
+            "local current = tonumber(redis.call('GET', key) or '0')\n" +
+            "if current >= limit then\n" +
+            "return 0\n" +
+            "end\n" +
+            "current = redis.call('INCRBY', key, 1)\n" +
+            "if current == 1 then\n" +
+            "redis.call('EXPIRE', key, ARGV[2])\n" +
+            "end\n" +
+            "return 1\n"),
+
+    /**
+     * 滑动窗口日志：有序集合记录每次放行的时间，任意period秒内最多放行count次
+     */
+    SLIDING_WINDOW("local key = KEYS[1]\n" +
+            "local limit = tonumber(ARGV[1])\n" +
+            "local window = tonumber(ARGV[2]) * 1000\n" +
+            "local t = redis.call('TIME')\n" +
+            "local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000)\n" +
+            "redis.call('ZREMRANGEBYSCORE', key, 0, now - window)\n" +
+            "if redis.call('ZCARD', key) >= limit then\n" +
+            "return 0\n" +
+            "end\n" +
+            "redis.call('ZADD', key, now, ARGV[4])\n" +
+            "redis.call('PEXPIRE', key, window)\n" +
+            "return 1\n"),
+
+    /**
+     * 令牌桶：每秒补充count/period个令牌，桶容量为burst，允许一定的突发流量
+     */
+    TOKEN_BUCKET("local key = KEYS[1]\n" +
+            "local rate = tonumber(ARGV[1]) / (tonumber(ARGV[2]) * 1000)\n" +
+            "local capacity = tonumber(ARGV[3])\n" +
+            "local t = redis.call('TIME')\n" +
+            "local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000)\n" +
+            "local bucket = redis.call('HMGET', key, 'tokens', 'ts')\n" +
+            "local tokens = tonumber(bucket[1])\n" +
+            "local ts = tonumber(bucket[2])\n" +
+            "if tokens == nil or ts == nil then\n" +
+            "tokens = capacity\n" +
+            "ts = now\n" +
+            "end\n" +
+            "tokens = math.min(capacity, tokens + math.max(0, now - ts) * rate)\n" +
+            "local allowed = 0\n" +
+            "if tokens >= 1 then\n" +
+            "tokens = tokens - 1\n" +
+            "allowed = 1\n" +
+            "end\n" +
+            "redis.call('HMSET', key, 'tokens', tokens, 'ts', now)\n" +
+            "redis.call('PEXPIRE', key, math.ceil(capacity / rate))\n" +
+            "return allowed\n");
+
+    private final String script;
+
+    LimitAlgorithm(String script) {
+        this.script = script;
+    }
+
+    public String getScript() {
+        return script;
+    }
+}
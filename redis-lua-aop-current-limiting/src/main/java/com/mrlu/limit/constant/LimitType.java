@@ -14,6 +14,11 @@ public enum LimitType {
     /**
      * 请求IP
      */
-    IP
+    IP,
+
+    /**
+     * SpEL表达式，基于方法参数计算key，如#userId、#p0、#request.tenantId
+     */
+    EXPRESSION
 
 }
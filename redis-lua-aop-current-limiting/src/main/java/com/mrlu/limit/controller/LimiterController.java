@@ -1,11 +1,15 @@
 package com.mrlu.limit.controller;
 
 import com.mrlu.limit.anno.Limit;
+import com.mrlu.limit.constant.LimitAlgorithm;
 import com.mrlu.limit.constant.LimitType;
 import com.mrlu.response.CommonResults;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -18,6 +22,13 @@ public class LimiterController {
     private static final AtomicInteger ATOMIC_INTEGER_1 = new AtomicInteger();
     private static final AtomicInteger ATOMIC_INTEGER_2 = new AtomicInteger();
     private static final AtomicInteger ATOMIC_INTEGER_3 = new AtomicInteger();
+    private static final AtomicInteger ATOMIC_INTEGER_4 = new AtomicInteger();
+    private static final AtomicInteger ATOMIC_INTEGER_5 = new AtomicInteger();
+    private static final AtomicInteger ATOMIC_INTEGER_6 = new AtomicInteger();
+    private static final AtomicInteger ATOMIC_INTEGER_7 = new AtomicInteger();
+    private static final AtomicInteger ATOMIC_INTEGER_8 = new AtomicInteger();
+    private static final AtomicInteger ATOMIC_INTEGER_9 = new AtomicInteger();
+    private static final AtomicInteger ATOMIC_INTEGER_10 = new AtomicInteger();
 
 
     @GetMapping("/limitTest1")
@@ -38,4 +49,48 @@ public class LimiterController {
         return CommonResults.ok(ATOMIC_INTEGER_3.incrementAndGet());
     }
 
+    @GetMapping("/limitTest4")
+    @Limit(key = "sliding_limit_test", period = 10, count = 3, algorithm = LimitAlgorithm.SLIDING_WINDOW)
+    public CommonResults testLimiter4() {
+        return CommonResults.ok(ATOMIC_INTEGER_4.incrementAndGet());
+    }
+
+    @GetMapping("/limitTest5")
+    @Limit(key = "bucket_limit_test", period = 10, count = 3, burst = 5, algorithm = LimitAlgorithm.TOKEN_BUCKET)
+    public CommonResults testLimiter5() {
+        return CommonResults.ok(ATOMIC_INTEGER_5.incrementAndGet());
+    }
+
+    @GetMapping("/limitTest6")
+    @Limit(key = "lease_limit_test", period = 10, count = 1000, lease = 100)
+    public CommonResults testLimiter6() {
+        return CommonResults.ok(ATOMIC_INTEGER_6.incrementAndGet());
+    }
+
+    @GetMapping("/limitTest7")
+    @Limit(key = "#userId", prefix = "user_limit_test", period = 10, count = 3, limitType = LimitType.EXPRESSION)
+    public CommonResults testLimiter7(@RequestParam("userId") String userId) {
+        return CommonResults.ok(ATOMIC_INTEGER_7.incrementAndGet());
+    }
+
+    @GetMapping("/limitTest8")
+    @Limit(prefix = "composite_ip", period = 10, count = 3, limitType = LimitType.IP)
+    @Limit(key = "#userId", prefix = "composite_user", period = 10, count = 5, limitType = LimitType.EXPRESSION)
+    @Limit(key = "global", prefix = "composite", period = 10, count = 100, algorithm = LimitAlgorithm.SLIDING_WINDOW)
+    public CommonResults testLimiter8(@RequestParam("userId") String userId) {
+        return CommonResults.ok(ATOMIC_INTEGER_8.incrementAndGet());
+    }
+
+    @GetMapping("/limitTest9")
+    @Limit(key = "mono_limit_test", period = 10, count = 3)
+    public Mono<CommonResults> testLimiter9() {
+        return Mono.fromSupplier(() -> CommonResults.ok(ATOMIC_INTEGER_9.incrementAndGet()));
+    }
+
+    @GetMapping("/limitTest10")
+    @Limit(key = "future_limit_test", period = 10, count = 3)
+    public CompletableFuture<CommonResults> testLimiter10() {
+        return CompletableFuture.completedFuture(CommonResults.ok(ATOMIC_INTEGER_10.incrementAndGet()));
+    }
+
 }
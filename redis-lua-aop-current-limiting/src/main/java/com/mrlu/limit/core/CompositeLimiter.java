@@ -0,0 +1,138 @@
+package com.mrlu.limit.core;
+
+import com.mrlu.redis.RedisScriptRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author 简单de快乐
+ *
+ * 多维度组合限流（如同时按ip、用户、全局限流）
+ * 所有维度在一次lua调用中完成：先逐个检查，全部通过后再统一计数，任意一个维度不通过则都不计数。
+ * 注意：redis集群模式下所有key需要落在同一个slot，可以通过prefix使用hash tag，如{order}
+ */
+@Component
+public class CompositeLimiter {
+
+    private static final String COMPOSITE_SCRIPT = "COMPOSITE";
+
+    /**
+     * KEYS[i]=第i个维度的key
+     * ARGV[(i-1)*4+1..(i-1)*4+4]=第i个维度的算法（LimitAlgorithm的序号：0固定窗口，1滑动窗口，2令牌桶）、count、period(秒)、burst
+     * ARGV[#KEYS*4+1]=本次请求的唯一标识
+     * 返回0表示全部放行，否则返回第一个拒绝的维度序号（从1开始）
+     */
+    private static final String COMPOSITE_LUA_SCRIPT = "local t = redis.call('TIME')\n" +
+            "local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000)\n" +
+            "local member = ARGV[#KEYS * 4 + 1]\n" +
+            "local tokens = {}\n" +
+            "for i, key in ipairs(KEYS) do\n" +
+            "local base = (i - 1) * 4\n" +
+            "local algorithm = tonumber(ARGV[base + 1])\n" +
+            "local limit = tonumber(ARGV[base + 2])\n" +
+            "local window = tonumber(ARGV[base + 3]) * 1000\n" +
+            "local burst = tonumber(ARGV[base + 4])\n" +
+            "if algorithm == 0 then\n" +
+            "if tonumber(redis.call('GET', key) or '0') >= limit then\n" +
+            "return i\n" +
+            "end\n" +
+            "elseif algorithm == 1 then\n" +
+            "redis.call('ZREMRANGEBYSCORE', key, 0, now - window)\n" +
+            "if redis.call('ZCARD', key) >= limit then\n" +
+            "return i\n" +
+            "end\n" +
+            "else\n" +
+            "local bucket = redis.call('HMGET', key, 'tokens', 'ts')\n" +
+            "local current = tonumber(bucket[1])\n" +
+            "local ts = tonumber(bucket[2])\n" +
+            "if current == nil or ts == nil then\n" +
+            "current = burst\n" +
+            "ts = now\n" +
+            "end\n" +
+            "current = math.min(burst, current + math.max(0, now - ts) * limit / window)\n" +
+            "if current < 1 then\n" +
+            "return i\n" +
+            "end\n" +
+            "tokens[i] = current\n" +
+            "end\n" +
+            "end\n" +
+            "for i, key in ipairs(KEYS) do\n" +
+            "local base = (i - 1) * 4\n" +
+            "local algorithm = tonumber(ARGV[base + 1])\n" +
+            "local limit = tonumber(ARGV[base + 2])\n" +
+            "local window = tonumber(ARGV[base + 3]) * 1000\n" +
+            "local burst = tonumber(ARGV[base + 4])\n" +
+            "if algorithm == 0 then\n" +
+            "if redis.call('INCRBY', key, 1) == 1 then\n" +
+            "redis.call('PEXPIRE', key, window)\n" +
+            "end\n" +
+            "elseif algorithm == 1 then\n" +
+            "redis.call('ZADD', key, now, member)\n" +
+            "redis.call('PEXPIRE', key, window)\n" +
+            "else\n" +
+            "redis.call('HMSET', key, 'tokens', tokens[i] - 1, 'ts', now)\n" +
+            "redis.call('PEXPIRE', key, math.ceil(burst * window / limit))\n" +
+            "end\n" +
+            "end\n" +
+            "return 0\n";
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    @Autowired
+    private ReactiveRedisTemplate<String, Object> reactiveRedisTemplate;
+
+    @Autowired
+    private RedisScriptRegistry redisScriptRegistry;
+
+    private RedisScript<Long> compositeScript;
+
+    @PostConstruct
+    public void init() {
+        compositeScript = redisScriptRegistry.register(COMPOSITE_SCRIPT, COMPOSITE_LUA_SCRIPT, Long.class);
+    }
+
+    /**
+     * 一次性获取所有维度的许可
+     * @param limits 各维度的限流元数据
+     * @param keys 各维度的完整key，和limits一一对应
+     * @param member 本次请求的唯一标识
+     * @return 0表示放行，否则为第一个拒绝的维度序号（从1开始）
+     */
+    public int tryAcquire(LimitMetadata[] limits, List<String> keys, String member) {
+        Long rejected = (Long) redisTemplate.execute(compositeScript, keys, args(limits, member));
+        return rejected == null ? 1 : rejected.intValue();
+    }
+
+    /**
+     * 一次性获取所有维度的许可，不阻塞线程
+     * @return 0表示放行，否则为第一个拒绝的维度序号（从1开始）
+     */
+    public Mono<Integer> tryAcquireReactive(LimitMetadata[] limits, List<String> keys, String member) {
+        return reactiveRedisTemplate.execute(compositeScript, keys, Arrays.asList(args(limits, member)))
+                .next()
+                .map(Long::intValue)
+                .defaultIfEmpty(1);
+    }
+
+    private Object[] args(LimitMetadata[] limits, String member) {
+        Object[] args = new Object[limits.length * 4 + 1];
+        for (int i = 0; i < limits.length; i++) {
+            LimitMetadata limit = limits[i];
+            args[i * 4] = limit.getAlgorithm().ordinal();
+            args[i * 4 + 1] = limit.getCount();
+            args[i * 4 + 2] = limit.getPeriod();
+            args[i * 4 + 3] = limit.getBurst();
+        }
+        args[args.length - 1] = member;
+        return args;
+    }
+}
@@ -0,0 +1,169 @@
+package com.mrlu.limit.core;
+
+import com.mrlu.redis.RedisScriptRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * @author 简单de快乐
+ *
+ * 租约模式的固定窗口限流
+ * 每个节点一次从redis的计数器中原子地预取一批许可（租约），之后在本地通过AtomicLong扣减，
+ * 只有租约用完或者窗口过期时才再次访问redis。
+ * 代价是精度：节点上没用完的许可在窗口结束时作废，全局放行数仍然不会超过count。
+ */
+@Component
+public class LeaseLimiter {
+    private static final Logger logger = LoggerFactory.getLogger(LeaseLimiter.class);
+
+    private static final String LEASE_SCRIPT = "FIXED_WINDOW_LEASE";
+
+    /**
+     * 本地租约数量超过该值时清理已过期的租约，避免按ip限流时key无限增长
+     */
+    private static final int MAX_LEASES = 10000;
+
+    /**
+     * KEYS[1]=限流key，ARGV[1]=count，ARGV[2]=period(秒)，ARGV[3]=本次预取的许可数
+     * 返回{本次实际分配的许可数, 窗口剩余毫秒数}
+     */
+    private static final String LEASE_LUA_SCRIPT = "local key = KEYS[1]\n" +
+            "local limit = tonumber(ARGV[1])\n" +
+            "local current = tonumber(redis.call('GET', key) or '0')\n" +
+            "local granted = math.min(tonumber(ARGV[3]), limit - current)\n" +
+            "if granted <= 0 then\n" +
+            "return {0, redis.call('PTTL', key)}\n" +
+            "end\n" +
+            "current = redis.call('INCRBY', key, granted)\n" +
+            "if current == granted then\n" +
+            "redis.call('EXPIRE', key, ARGV[2])\n" +
+            "end\n" +
+            "return {granted, redis.call('PTTL', key)}\n";
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    @Autowired
+    private RedisScriptRegistry redisScriptRegistry;
+
+    private RedisScript<List> leaseScript;
+
+    private final Map<String, LeaseHolder> leases = new ConcurrentHashMap<>();
+
+    /**
+     * 毫秒时钟，测试时可以替换
+     */
+    private LongSupplier clock = System::currentTimeMillis;
+
+    @PostConstruct
+    public void init() {
+        leaseScript = redisScriptRegistry.register(LEASE_SCRIPT, LEASE_LUA_SCRIPT, List.class);
+    }
+
+    /**
+     * 获取一个许可
+     * @param key 限流key
+     * @param count 窗口内最多访问次数
+     * @param period 窗口大小 单位(秒)
+     * @param leaseSize 每次从redis预取的许可数
+     * @return 是否放行
+     */
+    public boolean tryAcquire(String key, int count, int period, int leaseSize) {
+        LeaseHolder holder = leases.computeIfAbsent(key, k -> new LeaseHolder());
+        Lease lease = holder.lease;
+        if (lease != null && lease.tryAcquire(clock.getAsLong())) {
+            return true;
+        }
+        // 同一个key同时只有一个线程去redis续租，其他线程等待续租结果
+        synchronized (holder) {
+            long now = clock.getAsLong();
+            lease = holder.lease;
+            if (lease != null && !lease.isExpired(now)) {
+                if (lease.tryAcquire(now)) {
+                    return true;
+                }
+                if (lease.isRejected()) {
+                    // 本窗口内redis中的许可已经分配完，直到窗口结束前都直接拒绝
+                    return false;
+                }
+            }
+            lease = fetch(key, count, period, leaseSize, now);
+            holder.lease = lease;
+            evictExpired(now);
+            return lease.tryAcquire(now);
+        }
+    }
+
+    private Lease fetch(String key, int count, int period, int leaseSize, long now) {
+        List<Long> result = (List<Long>) redisTemplate.execute(leaseScript, Collections.singletonList(key), count, period, leaseSize);
+        long granted = result == null ? 0 : result.get(0);
+        long ttl = result == null ? -1 : result.get(1);
+        if (ttl <= 0) {
+            ttl = period * 1000L;
+        }
+        logger.debug("Lease {} permits for key = {}, expire in {}ms", granted, key, ttl);
+        return new Lease(granted, now + ttl);
+    }
+
+    private void evictExpired(long now) {
+        if (leases.size() > MAX_LEASES) {
+            leases.values().removeIf(holder -> holder.lease == null || holder.lease.isExpired(now));
+        }
+    }
+
+    private static final class LeaseHolder {
+        private volatile Lease lease;
+    }
+
+    /**
+     * 本地租约：剩余许可数和过期时间（与redis中窗口的过期时间一致）
+     */
+    private static final class Lease {
+
+        private final AtomicLong permits;
+
+        private final boolean rejected;
+
+        private final long expireAt;
+
+        private Lease(long permits, long expireAt) {
+            this.permits = new AtomicLong(permits);
+            this.rejected = permits <= 0;
+            this.expireAt = expireAt;
+        }
+
+        private boolean tryAcquire(long now) {
+            if (isExpired(now)) {
+                return false;
+            }
+            long current;
+            do {
+                current = permits.get();
+                if (current <= 0) {
+                    return false;
+                }
+            } while (!permits.compareAndSet(current, current - 1));
+            return true;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expireAt;
+        }
+
+        private boolean isRejected() {
+            return rejected;
+        }
+    }
+}
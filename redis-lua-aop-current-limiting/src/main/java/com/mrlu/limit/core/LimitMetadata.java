@@ -0,0 +1,120 @@
+package com.mrlu.limit.core;
+
+import com.mrlu.expression.MethodArgsEvaluationContext;
+import com.mrlu.limit.anno.Limit;
+import com.mrlu.limit.constant.LimitAlgorithm;
+import com.mrlu.limit.constant.LimitType;
+import lombok.Getter;
+import org.apache.commons.lang.StringUtils;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+
+import java.lang.reflect.Method;
+
+/**
+ * @author 简单de快乐
+ *
+ * 方法上@Limit注解解析后的元数据，每个方法只解析一次
+ * 不变的部分（静态key、带前缀的key模板、算法对应的脚本）提前算好，请求时只需要拼接动态部分（如ip）
+ */
+@Getter
+public class LimitMetadata {
+
+    /**
+     * 表达式多次求值后编译成字节码，不能编译或编译后的代码执行失败时回退为解释执行
+     */
+    private static final SpelExpressionParser PARSER = new SpelExpressionParser(
+            new SpelParserConfiguration(SpelCompilerMode.MIXED, LimitMetadata.class.getClassLoader()));
+
+    private final Method method;
+
+    private final String name;
+
+    /**
+     * 监控中使用的名称，未指定name时使用类名.方法名
+     */
+    private final String metricName;
+
+    private final int count;
+
+    private final int period;
+
+    /**
+     * 令牌桶容量，已按count兜底
+     */
+    private final int burst;
+
+    private final int lease;
+
+    private final LimitType limitType;
+
+    private final LimitAlgorithm algorithm;
+
+    private final RedisScript<Long> script;
+
+    /**
+     * 带前缀的key模板，动态key直接拼在后面
+     */
+    private final String keyPrefix;
+
+    /**
+     * 非动态key时提前拼好的完整key
+     */
+    private final String staticKey;
+
+    /**
+     * 限流类型为EXPRESSION时解析好的key表达式
+     */
+    private final Expression keyExpression;
+
+    /**
+     * 限流类型为EXPRESSION时共享的表达式上下文，只创建一次
+     */
+    private final MethodArgsEvaluationContext evaluationContext;
+
+    public LimitMetadata(Method method, Limit annotation, RedisScript<Long> script) {
+        this.method = method;
+        this.name = annotation.name();
+        this.metricName = StringUtils.isNotEmpty(name) ? name : method.getDeclaringClass().getSimpleName() + "." + method.getName();
+        this.count = annotation.count();
+        this.period = annotation.period();
+        this.burst = annotation.burst() > 0 ? annotation.burst() : annotation.count();
+        this.lease = annotation.lease();
+        this.limitType = annotation.limitType();
+        this.algorithm = annotation.algorithm();
+        this.script = script;
+        this.keyPrefix = StringUtils.isEmpty(annotation.prefix()) ? "" : annotation.prefix() + "-";
+        String key = annotation.key();
+        if (StringUtils.isEmpty(key)) {
+            // 获取用方法名做限流的key
+            key = StringUtils.upperCase(method.getName());
+        }
+        this.staticKey = keyPrefix + key;
+        this.keyExpression = limitType == LimitType.EXPRESSION ? PARSER.parseExpression(annotation.key()) : null;
+        this.evaluationContext = limitType == LimitType.EXPRESSION ? new MethodArgsEvaluationContext(method) : null;
+    }
+
+    /**
+     * 是否使用租约模式
+     */
+    public boolean isLeaseEnabled() {
+        return lease > 0 && algorithm == LimitAlgorithm.FIXED_WINDOW;
+    }
+
+    /**
+     * 基于方法参数计算表达式key
+     */
+    public String evaluateKey(Object[] args) {
+        return String.valueOf(evaluationContext.getValue(keyExpression, args));
+    }
+
+    /**
+     * 拼接动态部分得到完整的key
+     */
+    public String wholeKey(String dynamicKey) {
+        return keyPrefix + dynamicKey;
+    }
+}
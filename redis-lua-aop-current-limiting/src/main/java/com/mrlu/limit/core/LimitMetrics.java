@@ -0,0 +1,174 @@
+package com.mrlu.limit.core;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * @author 简单de快乐
+ *
+ * 限流监控
+ * （1）limit.requests：按限流名称和结果（admitted/rejected）统计的计数器
+ * （2）limit.redis.latency：redis限流脚本的耗时直方图
+ * （3）热点key：每个统计周期内最多跟踪HOT_KEY_CAPACITY个key，周期结束后切换，保留上一周期的完整结果
+ */
+@Component
+public class LimitMetrics {
+
+    private static final String REQUESTS = "limit.requests";
+
+    private static final String REDIS_LATENCY = "limit.redis.latency";
+
+    /**
+     * 每个周期最多跟踪的key数量，超过后新的key不再统计
+     */
+    private static final int HOT_KEY_CAPACITY = 1000;
+
+    /**
+     * 热点key的统计周期（毫秒）
+     */
+    private static final long HOT_KEY_WINDOW = TimeUnit.MINUTES.toMillis(1);
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, Meters> meters = new ConcurrentHashMap<>();
+
+    private volatile HotKeyWindow currentWindow = new HotKeyWindow(System.currentTimeMillis());
+
+    private volatile HotKeyWindow previousWindow;
+
+    /**
+     * 记录一次限流结果
+     */
+    public void record(String name, String key, boolean admitted) {
+        Meters m = meters(name);
+        if (admitted) {
+            m.admitted.increment();
+        } else {
+            m.rejected.increment();
+        }
+        hotKeys().record(key);
+    }
+
+    /**
+     * 记录一次redis限流脚本耗时
+     */
+    public void recordLatency(String name, long elapsedNanos) {
+        meters(name).latency.record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 各限流名称的统计
+     */
+    public Map<String, Object> summary() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        meters.forEach((name, m) -> {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("admitted", (long) m.admitted.count());
+            item.put("rejected", (long) m.rejected.count());
+            item.put("redisCalls", m.latency.count());
+            item.put("redisMeanMs", m.latency.mean(TimeUnit.MILLISECONDS));
+            item.put("redisMaxMs", m.latency.max(TimeUnit.MILLISECONDS));
+            result.put(name, item);
+        });
+        return result;
+    }
+
+    /**
+     * 最近一个完整周期和当前周期中访问最多的key
+     */
+    public Map<String, Object> hotKeys(int topN) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        HotKeyWindow previous = previousWindow;
+        result.put("previous", previous == null ? null : previous.top(topN));
+        result.put("current", hotKeys().top(topN));
+        return result;
+    }
+
+    private Meters meters(String name) {
+        Meters m = meters.get(name);
+        if (m == null) {
+            m = meters.computeIfAbsent(name, Meters::new);
+        }
+        return m;
+    }
+
+    private HotKeyWindow hotKeys() {
+        HotKeyWindow window = currentWindow;
+        long now = System.currentTimeMillis();
+        if (now - window.start < HOT_KEY_WINDOW) {
+            return window;
+        }
+        synchronized (this) {
+            if (currentWindow == window) {
+                previousWindow = window;
+                currentWindow = new HotKeyWindow(now);
+            }
+            return currentWindow;
+        }
+    }
+
+    private final class Meters {
+
+        private final Counter admitted;
+
+        private final Counter rejected;
+
+        private final Timer latency;
+
+        private Meters(String name) {
+            this.admitted = Counter.builder(REQUESTS).tag("name", name).tag("result", "admitted").register(meterRegistry);
+            this.rejected = Counter.builder(REQUESTS).tag("name", name).tag("result", "rejected").register(meterRegistry);
+            this.latency = Timer.builder(REDIS_LATENCY).tag("name", name)
+                    .publishPercentileHistogram()
+                    .publishPercentiles(0.5, 0.99)
+                    .register(meterRegistry);
+        }
+    }
+
+    private static final class HotKeyWindow {
+
+        private final long start;
+
+        private final Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+
+        private HotKeyWindow(long start) {
+            this.start = start;
+        }
+
+        private void record(String key) {
+            LongAdder count = counts.get(key);
+            if (count == null) {
+                if (counts.size() >= HOT_KEY_CAPACITY) {
+                    return;
+                }
+                count = counts.computeIfAbsent(key, k -> new LongAdder());
+            }
+            count.increment();
+        }
+
+        private List<Map<String, Object>> top(int topN) {
+            return counts.entrySet().stream()
+                    .map(e -> {
+                        Map<String, Object> item = new LinkedHashMap<>();
+                        item.put("key", e.getKey());
+                        item.put("count", e.getValue().sum());
+                        return item;
+                    })
+                    .sorted((a, b) -> Long.compare((Long) b.get("count"), (Long) a.get("count")))
+                    .limit(topN)
+                    .collect(Collectors.toList());
+        }
+    }
+}
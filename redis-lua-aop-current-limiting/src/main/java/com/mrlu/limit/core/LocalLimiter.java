@@ -0,0 +1,76 @@
+package com.mrlu.limit.core;
+
+import com.mrlu.limit.config.LimitFallbackProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * @author 简单de快乐
+ *
+ * 本地降级限流，redis不可用时使用
+ * 每个key一个令牌桶，用GCRA算法实现：只保存一个“理论到达时间”，一次CAS完成判断和扣减，无锁。
+ * 每个节点的额度为count / clusterSize，保证整个集群降级期间的总流量仍然有上限。
+ */
+@Component
+public class LocalLimiter {
+
+    @Autowired
+    private LimitFallbackProperties properties;
+
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * 纳秒时钟，测试时可以替换
+     */
+    private LongSupplier ticker = System::nanoTime;
+
+    /**
+     * 获取一个许可
+     * @param key 限流key
+     * @param count 集群整体在period内最多访问次数
+     * @param period 时间范围 单位(秒)
+     * @param burst 集群整体允许的突发请求数
+     * @return 是否放行
+     */
+    public boolean tryAcquire(String key, int count, int period, int burst) {
+        int clusterSize = Math.max(1, properties.getClusterSize());
+        long localCount = Math.max(1, (count + clusterSize - 1) / clusterSize);
+        long localBurst = Math.max(1, (burst + clusterSize - 1) / clusterSize);
+        // 每个令牌的间隔和允许提前的时间
+        long interval = TimeUnit.SECONDS.toNanos(period) / localCount;
+        long tolerance = interval * (localBurst - 1);
+
+        AtomicLong bucket = bucket(key);
+        long now = ticker.getAsLong();
+        long tat;
+        long next;
+        do {
+            tat = bucket.get();
+            long start = Math.max(tat, now);
+            if (start - now > tolerance) {
+                return false;
+            }
+            next = start + interval;
+        } while (!bucket.compareAndSet(tat, next));
+        return true;
+    }
+
+    private AtomicLong bucket(String key) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (buckets.size() >= properties.getMaxKeys()) {
+            // 理论到达时间已经过去的桶是满的，删掉和重新创建等价
+            long now = ticker.getAsLong();
+            buckets.values().removeIf(b -> b.get() <= now);
+        }
+        return buckets.computeIfAbsent(key, k -> new AtomicLong(ticker.getAsLong()));
+    }
+}
@@ -0,0 +1,79 @@
+package com.mrlu.limit.core;
+
+import com.mrlu.limit.config.LimitFallbackProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * @author 简单de快乐
+ *
+ * redis调用的熔断器
+ * （1）关闭：正常访问redis，连续失败（异常或者慢调用）达到failureThreshold次后打开
+ * （2）打开：openDuration内不访问redis，直接走本地限流
+ * （3）半开：打开时间结束后只放一个请求去探测redis，成功则关闭，失败则重新打开
+ */
+@Component
+public class RedisCircuitBreaker {
+    private static final Logger logger = LoggerFactory.getLogger(RedisCircuitBreaker.class);
+
+    @Autowired
+    private LimitFallbackProperties properties;
+
+    private final AtomicInteger failures = new AtomicInteger();
+
+    private final AtomicLong openUntil = new AtomicLong();
+
+    /**
+     * 毫秒时钟，测试时可以替换
+     */
+    private LongSupplier clock = System::currentTimeMillis;
+
+    /**
+     * 是否允许访问redis
+     */
+    public boolean allowRequest() {
+        if (failures.get() < properties.getFailureThreshold()) {
+            return true;
+        }
+        long until = openUntil.get();
+        long now = clock.getAsLong();
+        // 半开状态，只有一个线程能抢到探测的机会
+        return now >= until && openUntil.compareAndSet(until, now + properties.getOpenDuration());
+    }
+
+    /**
+     * redis调用成功，耗时超过阈值时按失败处理
+     * @param elapsedNanos 调用耗时（纳秒）
+     */
+    public void onSuccess(long elapsedNanos) {
+        if (TimeUnit.NANOSECONDS.toMillis(elapsedNanos) > properties.getSlowThreshold()) {
+            onFailure();
+            return;
+        }
+        if (failures.getAndSet(0) >= properties.getFailureThreshold()) {
+            logger.info("Redis recovered, limiter circuit closed");
+        }
+    }
+
+    /**
+     * redis调用失败
+     */
+    public void onFailure() {
+        int count = failures.incrementAndGet();
+        if (count == properties.getFailureThreshold()) {
+            openUntil.set(clock.getAsLong() + properties.getOpenDuration());
+            logger.warn("Redis failed {} times in a row, limiter circuit opened for {}ms", count, properties.getOpenDuration());
+        }
+    }
+
+    public boolean isOpen() {
+        return failures.get() >= properties.getFailureThreshold();
+    }
+}
@@ -0,0 +1,40 @@
+package com.mrlu.limit.endpoint;
+
+import com.mrlu.limit.core.LimitMetrics;
+import com.mrlu.limit.core.RedisCircuitBreaker;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author 简单de快乐
+ *
+ * 限流监控端点：/actuator/limiter?top=10
+ * 计数器和耗时直方图同时注册到了MeterRegistry，也可以通过/actuator/metrics/limit.requests查看
+ */
+@Component
+@Endpoint(id = "limiter")
+public class LimiterEndpoint {
+
+    private static final int DEFAULT_TOP = 10;
+
+    @Autowired
+    private LimitMetrics limitMetrics;
+
+    @Autowired
+    private RedisCircuitBreaker circuitBreaker;
+
+    @ReadOperation
+    public Map<String, Object> limiter(@Nullable Integer top) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("circuitOpen", circuitBreaker.isOpen());
+        result.put("limits", limitMetrics.summary());
+        result.put("hotKeys", limitMetrics.hotKeys(top == null ? DEFAULT_TOP : top));
+        return result;
+    }
+}
@@ -0,0 +1,48 @@
+package com.mrlu.limit;
+
+import com.mrlu.limit.config.RedisConfig;
+import org.junit.jupiter.api.Assumptions;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * @author 简单de快乐
+ *
+ * lua脚本测试需要真实的redis（-Dredis.host、-Dredis.port，默认localhost:6379），连不上时跳过
+ */
+public final class RedisTestSupport {
+
+    private RedisTestSupport() {
+    }
+
+    public static LettuceConnectionFactory connectOrSkip() {
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(
+                System.getProperty("redis.host", "localhost"), Integer.getInteger("redis.port", 6379));
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(configuration,
+                LettuceClientConfiguration.builder().commandTimeout(Duration.ofSeconds(2)).build());
+        factory.afterPropertiesSet();
+        try {
+            factory.getConnection().ping();
+        } catch (Exception e) {
+            factory.destroy();
+            Assumptions.assumeTrue(false, "redis not available: " + e.getMessage());
+        }
+        return factory;
+    }
+
+    /**
+     * 与应用中相同序列化方式的模板，脚本参数的编码与线上一致
+     */
+    public static RedisTemplate<String, Object> redisTemplate(LettuceConnectionFactory factory) {
+        return new RedisConfig().redisTemplate(factory);
+    }
+
+    public static String uniqueKey(String name) {
+        return "limit-test:" + name + ":" + UUID.randomUUID();
+    }
+}
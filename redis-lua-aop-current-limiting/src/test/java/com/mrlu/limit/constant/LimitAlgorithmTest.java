@@ -0,0 +1,84 @@
+package com.mrlu.limit.constant;
+
+import com.mrlu.limit.RedisTestSupport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author 简单de快乐
+ *
+ * 各限流算法lua脚本的边界，需要真实的redis
+ */
+class LimitAlgorithmTest {
+
+    private LettuceConnectionFactory factory;
+
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @BeforeEach
+    void setUp() {
+        factory = RedisTestSupport.connectOrSkip();
+        redisTemplate = RedisTestSupport.redisTemplate(factory);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (factory != null) {
+            factory.destroy();
+        }
+    }
+
+    private long acquire(LimitAlgorithm algorithm, String key, int count, int period, int burst) {
+        Long result = redisTemplate.execute(new DefaultRedisScript<>(algorithm.getScript(), Long.class),
+                Collections.singletonList(key), count, period, burst, UUID.randomUUID().toString());
+        return result == null ? -1 : result;
+    }
+
+    @Test
+    void fixedWindowLimitAndReset() throws InterruptedException {
+        String key = RedisTestSupport.uniqueKey("fixed");
+        for (int i = 0; i < 3; i++) {
+            assertEquals(1, acquire(LimitAlgorithm.FIXED_WINDOW, key, 3, 1, 3));
+        }
+        assertEquals(0, acquire(LimitAlgorithm.FIXED_WINDOW, key, 3, 1, 3));
+        // 拒绝的请求不计数
+        assertEquals(3, Long.parseLong(String.valueOf(redisTemplate.opsForValue().get(key))));
+        Thread.sleep(1100);
+        assertEquals(1, acquire(LimitAlgorithm.FIXED_WINDOW, key, 3, 1, 3));
+    }
+
+    @Test
+    void slidingWindowLimitAndSlide() throws InterruptedException {
+        String key = RedisTestSupport.uniqueKey("sliding");
+        for (int i = 0; i < 3; i++) {
+            assertEquals(1, acquire(LimitAlgorithm.SLIDING_WINDOW, key, 3, 1, 3));
+        }
+        assertEquals(0, acquire(LimitAlgorithm.SLIDING_WINDOW, key, 3, 1, 3));
+        assertEquals(3L, redisTemplate.opsForZSet().zCard(key));
+        Thread.sleep(1100);
+        assertEquals(1, acquire(LimitAlgorithm.SLIDING_WINDOW, key, 3, 1, 3));
+    }
+
+    @Test
+    void tokenBucketBurstAndRefill() throws InterruptedException {
+        String key = RedisTestSupport.uniqueKey("bucket");
+        // 每秒10个令牌，桶容量3
+        for (int i = 0; i < 3; i++) {
+            assertEquals(1, acquire(LimitAlgorithm.TOKEN_BUCKET, key, 10, 1, 3));
+        }
+        assertEquals(0, acquire(LimitAlgorithm.TOKEN_BUCKET, key, 10, 1, 3));
+        // 100ms补充一个令牌
+        Thread.sleep(150);
+        assertEquals(1, acquire(LimitAlgorithm.TOKEN_BUCKET, key, 10, 1, 3));
+        assertEquals(0, acquire(LimitAlgorithm.TOKEN_BUCKET, key, 10, 1, 3));
+    }
+}
@@ -0,0 +1,99 @@
+package com.mrlu.limit.core;
+
+import com.mrlu.limit.RedisTestSupport;
+import com.mrlu.limit.anno.Limit;
+import com.mrlu.limit.constant.LimitAlgorithm;
+import com.mrlu.redis.RedisScriptRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author 简单de快乐
+ *
+ * 多维度组合限流脚本，需要真实的redis
+ */
+class CompositeLimiterTest {
+
+    private LettuceConnectionFactory factory;
+
+    private RedisTemplate<String, Object> redisTemplate;
+
+    private CompositeLimiter limiter;
+
+    @Limit(period = 10, count = 2)
+    @Limit(period = 10, count = 5)
+    public void fixedWindows() {
+    }
+
+    @Limit(period = 1, count = 10, burst = 3, algorithm = LimitAlgorithm.TOKEN_BUCKET)
+    @Limit(period = 10, count = 2, algorithm = LimitAlgorithm.SLIDING_WINDOW)
+    public void bucketAndSliding() {
+    }
+
+    @BeforeEach
+    void setUp() {
+        factory = RedisTestSupport.connectOrSkip();
+        redisTemplate = RedisTestSupport.redisTemplate(factory);
+        limiter = new CompositeLimiter();
+        ReflectionTestUtils.setField(limiter, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(limiter, "redisScriptRegistry", new RedisScriptRegistry(redisTemplate));
+        limiter.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (factory != null) {
+            factory.destroy();
+        }
+    }
+
+    private LimitMetadata[] metadata(String methodName) throws NoSuchMethodException {
+        Method method = getClass().getMethod(methodName);
+        Limit[] limits = method.getAnnotationsByType(Limit.class);
+        LimitMetadata[] metadata = new LimitMetadata[limits.length];
+        for (int i = 0; i < limits.length; i++) {
+            metadata[i] = new LimitMetadata(method, limits[i], null);
+        }
+        return metadata;
+    }
+
+    private int acquire(LimitMetadata[] limits, String... keys) {
+        return limiter.tryAcquire(limits, Arrays.asList(keys), UUID.randomUUID().toString());
+    }
+
+    @Test
+    void rejectedDimensionIsReportedAndNothingIsCounted() throws Exception {
+        LimitMetadata[] limits = metadata("fixedWindows");
+        String first = RedisTestSupport.uniqueKey("first");
+        String second = RedisTestSupport.uniqueKey("second");
+        assertEquals(0, acquire(limits, first, second));
+        assertEquals(0, acquire(limits, first, second));
+        assertEquals(1, acquire(limits, first, second));
+        // 第一个维度拒绝时，第二个维度也不计数
+        assertEquals(2, Long.parseLong(String.valueOf(redisTemplate.opsForValue().get(second))));
+    }
+
+    @Test
+    void tokensAreOnlyTakenWhenAllDimensionsPass() throws Exception {
+        LimitMetadata[] limits = metadata("bucketAndSliding");
+        String bucket = RedisTestSupport.uniqueKey("bucket");
+        String sliding = RedisTestSupport.uniqueKey("sliding");
+        assertEquals(0, acquire(limits, bucket, sliding));
+        assertEquals(0, acquire(limits, bucket, sliding));
+        assertEquals(2, acquire(limits, bucket, sliding));
+        // 滑动窗口拒绝时令牌桶没有扣减，桶里还剩1个令牌
+        LimitMetadata[] bucketOnly = {limits[0]};
+        assertEquals(0, acquire(bucketOnly, bucket));
+        assertEquals(1, acquire(bucketOnly, bucket));
+    }
+}
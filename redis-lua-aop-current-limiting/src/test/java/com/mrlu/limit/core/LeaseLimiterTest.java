@@ -0,0 +1,149 @@
+package com.mrlu.limit.core;
+
+import com.mrlu.redis.RedisScriptRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author 简单de快乐
+ *
+ * 租约模式限流，redis中的固定窗口计数由内存实现代替，与租约脚本的语义一致
+ */
+class LeaseLimiterTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+
+    private final FakeRedis redis = new FakeRedis();
+
+    private LeaseLimiter nodeA;
+
+    private LeaseLimiter nodeB;
+
+    @BeforeEach
+    void setUp() {
+        nodeA = limiter();
+        nodeB = limiter();
+    }
+
+    private LeaseLimiter limiter() {
+        LeaseLimiter limiter = new LeaseLimiter();
+        ReflectionTestUtils.setField(limiter, "redisTemplate", redis);
+        ReflectionTestUtils.setField(limiter, "redisScriptRegistry", new RedisScriptRegistry(redis));
+        ReflectionTestUtils.setField(limiter, "clock", (LongSupplier) now::get);
+        limiter.init();
+        return limiter;
+    }
+
+    @Test
+    void leasedPermitsAreConsumedLocally() {
+        for (int i = 0; i < 4; i++) {
+            assertTrue(nodeA.tryAcquire("k", 10, 1, 4));
+        }
+        assertEquals(1, redis.calls);
+        // 租约用完后才再次访问redis
+        assertTrue(nodeA.tryAcquire("k", 10, 1, 4));
+        assertEquals(2, redis.calls);
+    }
+
+    @Test
+    void lastLeaseIsTrimmedToRemainingCount() {
+        int passed = 0;
+        while (nodeA.tryAcquire("k", 10, 1, 4)) {
+            passed++;
+        }
+        // 4 + 4 + 2
+        assertEquals(10, passed);
+        assertEquals(10, redis.counter("k"));
+    }
+
+    @Test
+    void rejectedLeaseSkipsRedisUntilWindowEnds() {
+        while (nodeA.tryAcquire("k", 10, 1, 4)) {
+            // 用完本窗口的额度
+        }
+        int calls = redis.calls;
+        for (int i = 0; i < 100; i++) {
+            assertFalse(nodeA.tryAcquire("k", 10, 1, 4));
+        }
+        assertEquals(calls, redis.calls);
+        now.addAndGet(1000);
+        assertTrue(nodeA.tryAcquire("k", 10, 1, 4));
+        assertEquals(calls + 1, redis.calls);
+    }
+
+    @Test
+    void unusedPermitsExpireWithWindow() {
+        assertTrue(nodeA.tryAcquire("k", 10, 1, 4));
+        now.addAndGet(999);
+        assertTrue(nodeA.tryAcquire("k", 10, 1, 4));
+        now.addAndGet(1);
+        // 上个窗口剩下的2个许可作废，新窗口重新从redis预取
+        assertTrue(nodeA.tryAcquire("k", 10, 1, 4));
+        assertEquals(2, redis.calls);
+        assertEquals(4, redis.counter("k"));
+    }
+
+    @Test
+    void nodesNeverExceedGlobalCount() {
+        int passed = 0;
+        for (int i = 0; i < 20; i++) {
+            if (nodeA.tryAcquire("k", 10, 1, 3)) {
+                passed++;
+            }
+            if (nodeB.tryAcquire("k", 10, 1, 3)) {
+                passed++;
+            }
+        }
+        assertEquals(10, passed);
+    }
+
+    /**
+     * 只实现租约脚本：KEYS[1]=限流key，ARGV=count、period(秒)、预取数量，返回{分配的许可数, 窗口剩余毫秒数}
+     */
+    private final class FakeRedis extends RedisTemplate<String, Object> {
+
+        private final Map<String, long[]> windows = new HashMap<>();
+
+        private int calls;
+
+        private long counter(String key) {
+            long[] window = windows.get(key);
+            return window == null || window[1] <= now.get() ? 0 : window[0];
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+            calls++;
+            String key = keys.get(0);
+            long limit = ((Number) args[0]).longValue();
+            long period = ((Number) args[1]).longValue();
+            long wanted = ((Number) args[2]).longValue();
+            long[] window = windows.get(key);
+            if (window == null || window[1] <= now.get()) {
+                window = new long[]{0, now.get() + period * 1000};
+                windows.put(key, window);
+            }
+            long granted = Math.min(wanted, limit - window[0]);
+            if (granted <= 0) {
+                return (T) Arrays.asList(0L, window[1] - now.get());
+            }
+            window[0] += granted;
+            return (T) Arrays.asList(granted, window[1] - now.get());
+        }
+    }
+}
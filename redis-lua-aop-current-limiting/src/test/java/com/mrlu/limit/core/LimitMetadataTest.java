@@ -0,0 +1,75 @@
+package com.mrlu.limit.core;
+
+import com.mrlu.limit.anno.Limit;
+import com.mrlu.limit.constant.LimitType;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author 简单de快乐
+ *
+ * 表达式key求值
+ */
+class LimitMetadataTest {
+
+    @Limit(key = "#userId + '-' + #p1", prefix = "user", period = 10, count = 3, limitType = LimitType.EXPRESSION)
+    public void byUser(Object userId, String channel) {
+    }
+
+    @Limit(key = "#userId.toString()", period = 10, count = 3, limitType = LimitType.EXPRESSION)
+    public void byUserId(Object userId) {
+    }
+
+    private LimitMetadata metadata() throws NoSuchMethodException {
+        Method method = getClass().getMethod("byUser", Object.class, String.class);
+        return new LimitMetadata(method, method.getAnnotation(Limit.class), null);
+    }
+
+    @Test
+    void evaluateKeyByNameAndIndex() throws Exception {
+        LimitMetadata metadata = metadata();
+        assertEquals("1-app", metadata.evaluateKey(new Object[]{1, "app"}));
+        assertEquals("user-1-app", metadata.wholeKey(metadata.evaluateKey(new Object[]{1, "app"})));
+    }
+
+    @Test
+    void evaluateKeyWhenArgumentTypeChanges() throws Exception {
+        Method method = getClass().getMethod("byUserId", Object.class);
+        LimitMetadata metadata = new LimitMetadata(method, method.getAnnotation(Limit.class), null);
+        // 多次求值后表达式按Integer编译，参数类型变化时回退为解释执行
+        for (int i = 0; i < 200; i++) {
+            assertEquals(String.valueOf(i), metadata.evaluateKey(new Object[]{i}));
+        }
+        assertEquals("abc", metadata.evaluateKey(new Object[]{"abc"}));
+    }
+
+    @Test
+    void evaluateKeyConcurrently() throws Exception {
+        LimitMetadata metadata = metadata();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                String channel = "c" + t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        assertEquals(i + "-" + channel, metadata.evaluateKey(new Object[]{i, channel}));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
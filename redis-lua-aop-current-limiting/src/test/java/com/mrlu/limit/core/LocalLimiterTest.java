@@ -0,0 +1,133 @@
+package com.mrlu.limit.core;
+
+import com.mrlu.limit.config.LimitFallbackProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author 简单de快乐
+ *
+ * 本地GCRA限流，使用假时钟
+ */
+class LocalLimiterTest {
+
+    private final AtomicLong now = new AtomicLong(TimeUnit.SECONDS.toNanos(100));
+
+    private LimitFallbackProperties properties;
+
+    private LocalLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        properties = new LimitFallbackProperties();
+        limiter = new LocalLimiter();
+        ReflectionTestUtils.setField(limiter, "properties", properties);
+        ReflectionTestUtils.setField(limiter, "ticker", (LongSupplier) now::get);
+    }
+
+    private void advanceMillis(long millis) {
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    @Test
+    void burstThenReject() {
+        // 每秒10个，间隔100ms，突发5个
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.tryAcquire("k", 10, 1, 5), "burst permit " + i);
+        }
+        assertFalse(limiter.tryAcquire("k", 10, 1, 5));
+    }
+
+    @Test
+    void refillOneIntervalAtATime() {
+        for (int i = 0; i < 5; i++) {
+            limiter.tryAcquire("k", 10, 1, 5);
+        }
+        advanceMillis(99);
+        assertFalse(limiter.tryAcquire("k", 10, 1, 5));
+        advanceMillis(1);
+        assertTrue(limiter.tryAcquire("k", 10, 1, 5));
+        assertFalse(limiter.tryAcquire("k", 10, 1, 5));
+    }
+
+    @Test
+    void idleBucketRefillsOnlyUpToBurst() {
+        for (int i = 0; i < 5; i++) {
+            limiter.tryAcquire("k", 10, 1, 5);
+        }
+        advanceMillis(10_000);
+        int passed = 0;
+        while (limiter.tryAcquire("k", 10, 1, 5)) {
+            passed++;
+        }
+        assertEquals(5, passed);
+    }
+
+    @Test
+    void keysAreIndependent() {
+        assertTrue(limiter.tryAcquire("a", 1, 1, 1));
+        assertFalse(limiter.tryAcquire("a", 1, 1, 1));
+        assertTrue(limiter.tryAcquire("b", 1, 1, 1));
+    }
+
+    @Test
+    void quotaIsSplitAcrossCluster() {
+        properties.setClusterSize(2);
+        // 集群突发5个，每个节点向上取整为3个
+        int passed = 0;
+        while (limiter.tryAcquire("k", 10, 1, 5)) {
+            passed++;
+        }
+        assertEquals(3, passed);
+        // 每个节点每秒5个，间隔200ms
+        advanceMillis(199);
+        assertFalse(limiter.tryAcquire("k", 10, 1, 5));
+        advanceMillis(1);
+        assertTrue(limiter.tryAcquire("k", 10, 1, 5));
+    }
+
+    @Test
+    void concurrentCallersNeverExceedBurst() throws Exception {
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger passed = new AtomicInteger();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 1000; i++) {
+                        if (limiter.tryAcquire("k", 100, 1, 20)) {
+                            passed.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(20, passed.get());
+    }
+}
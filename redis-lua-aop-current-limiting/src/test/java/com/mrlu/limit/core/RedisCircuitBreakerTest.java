@@ -0,0 +1,108 @@
+package com.mrlu.limit.core;
+
+import com.mrlu.limit.config.LimitFallbackProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author 简单de快乐
+ *
+ * redis熔断器状态转换，使用假时钟
+ */
+class RedisCircuitBreakerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+
+    private RedisCircuitBreaker breaker;
+
+    @BeforeEach
+    void setUp() {
+        LimitFallbackProperties properties = new LimitFallbackProperties();
+        properties.setFailureThreshold(3);
+        properties.setOpenDuration(1000);
+        properties.setSlowThreshold(200);
+        breaker = new RedisCircuitBreaker();
+        ReflectionTestUtils.setField(breaker, "properties", properties);
+        ReflectionTestUtils.setField(breaker, "clock", (LongSupplier) now::get);
+    }
+
+    private void open() {
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure();
+        }
+    }
+
+    @Test
+    void opensAfterConsecutiveFailures() {
+        breaker.onFailure();
+        breaker.onFailure();
+        assertFalse(breaker.isOpen());
+        assertTrue(breaker.allowRequest());
+        breaker.onFailure();
+        assertTrue(breaker.isOpen());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    void successResetsFailureCount() {
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onSuccess(FAST);
+        breaker.onFailure();
+        breaker.onFailure();
+        assertFalse(breaker.isOpen());
+    }
+
+    @Test
+    void slowCallCountsAsFailure() {
+        for (int i = 0; i < 3; i++) {
+            breaker.onSuccess(TimeUnit.MILLISECONDS.toNanos(201));
+        }
+        assertTrue(breaker.isOpen());
+    }
+
+    @Test
+    void halfOpenAllowsSingleProbeAfterOpenDuration() {
+        open();
+        now.addAndGet(999);
+        assertFalse(breaker.allowRequest());
+        now.addAndGet(1);
+        assertTrue(breaker.allowRequest());
+        // 探测请求还没有结果，其他请求继续走本地限流
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    void successfulProbeClosesCircuit() {
+        open();
+        now.addAndGet(1000);
+        assertTrue(breaker.allowRequest());
+        breaker.onSuccess(FAST);
+        assertFalse(breaker.isOpen());
+        assertTrue(breaker.allowRequest());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    void failedProbeReopensForAnotherOpenDuration() {
+        open();
+        now.addAndGet(1000);
+        assertTrue(breaker.allowRequest());
+        breaker.onFailure();
+        assertTrue(breaker.isOpen());
+        now.addAndGet(999);
+        assertFalse(breaker.allowRequest());
+        now.addAndGet(1);
+        assertTrue(breaker.allowRequest());
+    }
+}
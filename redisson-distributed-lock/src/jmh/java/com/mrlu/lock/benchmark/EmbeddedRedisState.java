@@ -0,0 +1,46 @@
+package com.mrlu.lock.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.redisson.config.Config;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+
+/**
+ * @author 简单de快乐
+ *
+ * 基准测试使用的内嵌redis和redisson客户端，每个fork启动一次
+ */
+@State(Scope.Benchmark)
+public class EmbeddedRedisState {
+
+    private static final int PORT = 16380;
+
+    private RedisServer redisServer;
+
+    RedissonClient redissonClient;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        redisServer = new RedisServer(PORT);
+        redisServer.start();
+        Config config = new Config();
+        config.useSingleServer()
+                .setAddress("redis://127.0.0.1:" + PORT)
+                .setConnectionPoolSize(128)
+                .setSubscriptionConnectionPoolSize(128);
+        redissonClient = Redisson.create(config);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+        redissonClient.shutdown();
+        redisServer.stop();
+    }
+}
@@ -0,0 +1,83 @@
+package com.mrlu.lock.benchmark;
+
+import com.mrlu.lock.anno.DistributedLock;
+import com.mrlu.lock.core.LockMetadata;
+import com.mrlu.server.entity.Person;
+import org.openjdk.jmh.annotations.*;
+import org.redisson.api.RLock;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author 简单de快乐
+ *
+ * 切面的key解析开销：每次请求解析SpEL vs 按方法缓存的LockMetadata，以及加上一次加锁+解锁后的整体开销
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeyResolutionBenchmark {
+
+    private static final String KEY = "#person.name + '-' + #person.id";
+
+    private Method method;
+
+    private LockMetadata metadata;
+
+    private Object[] args;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        method = LockedTarget.class.getMethod("update", Person.class);
+        metadata = new LockMetadata(method, method.getAnnotation(DistributedLock.class));
+        args = new Object[]{new Person().setId(6).setName("bench")};
+    }
+
+    @Benchmark
+    public String parseEveryTime() {
+        String[] paramNames = new DefaultParameterNameDiscoverer().getParameterNames(method);
+        Expression expression = new SpelExpressionParser().parseExpression(KEY);
+        EvaluationContext context = new StandardEvaluationContext();
+        for (int i = 0; i < args.length; i++) {
+            context.setVariable(paramNames[i], args[i]);
+        }
+        return "person-add-age" + expression.getValue(context);
+    }
+
+    @Benchmark
+    public String cachedMetadata() {
+        return metadata.lockKeys(args).get(0);
+    }
+
+    @Benchmark
+    public void lockWithStaticKey(EmbeddedRedisState redis) {
+        lockAndUnlock(redis, "person-add-agebench-6");
+    }
+
+    @Benchmark
+    public void lockWithSpelKey(EmbeddedRedisState redis) {
+        lockAndUnlock(redis, metadata.lockKeys(args).get(0));
+    }
+
+    private void lockAndUnlock(EmbeddedRedisState redis, String key) {
+        RLock lock = redis.redissonClient.getLock(key);
+        lock.lock(30, TimeUnit.SECONDS);
+        lock.unlock();
+    }
+
+    public static class LockedTarget {
+
+        @DistributedLock(key = KEY, keyPrefix = "person-add-age")
+        public void update(Person person) {
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.mrlu.lock.benchmark;
+
+import com.mrlu.lock.constant.LockMode;
+import com.mrlu.lock.core.IDistributedLock;
+import com.mrlu.lock.core.LeaseRenewalScheduler;
+import com.mrlu.lock.core.LocalLockStriper;
+import com.mrlu.lock.core.LockMetrics;
+import com.mrlu.lock.core.RedissonDistributedLock;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.redisson.api.RLock;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * @author 简单de快乐
+ *
+ * 通过RedissonDistributedLock加锁+解锁的吞吐和耗时，与切面走同一条路径：
+ * 公平锁 vs 非公平锁，lock vs tryLock，不同的key数量，单key vs 联锁，是否先获取本地分段锁，
+ * 固定过期时间 vs 看门狗续期 vs 调度器批量续期
+ * 线程数通过JMH的-t参数指定，如 -t 1、-t 8、-t 64；key越少、线程越多，竞争越激烈
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LockBenchmark {
+
+    private static final long TRY_TIME = 1;
+
+    @Param({"false", "true"})
+    private boolean fair;
+
+    /**
+     * key数量
+     */
+    @Param({"1", "16", "1024"})
+    private int keys;
+
+    /**
+     * 每次加锁的key数量，大于1时加联锁
+     */
+    @Param({"1", "3"})
+    private int keysPerLock;
+
+    /**
+     * 是否先获取本地分段锁
+     */
+    @Param({"false", "true"})
+    private boolean localLock;
+
+    /**
+     * 续期方式：fixed固定30秒过期，watchdog由redisson看门狗续期，batch由调度器批量续期
+     */
+    @Param({"fixed", "watchdog", "batch"})
+    private String renewal;
+
+    private String[] lockKeys;
+
+    private long lockTime;
+
+    private IDistributedLock distributedLock;
+
+    private LocalLockStriper localLockStriper;
+
+    private LeaseRenewalScheduler leaseRenewalScheduler;
+
+    private LockMetrics lockMetrics;
+
+    @Setup
+    public void setup(EmbeddedRedisState redis) {
+        lockKeys = new String[keys];
+        for (int i = 0; i < keys; i++) {
+            lockKeys[i] = "bench-lock-" + i;
+        }
+        lockTime = "fixed".equals(renewal) ? 30 : 0;
+
+        lockMetrics = new LockMetrics();
+        ReflectionTestUtils.setField(lockMetrics, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(lockMetrics, "redissonClient", redis.redissonClient);
+        ReflectionTestUtils.setField(lockMetrics, "slowHoldScanInterval", 1000L);
+        lockMetrics.init();
+
+        leaseRenewalScheduler = new LeaseRenewalScheduler();
+        ReflectionTestUtils.setField(leaseRenewalScheduler, "redissonClient", redis.redissonClient);
+        ReflectionTestUtils.setField(leaseRenewalScheduler, "lockMetrics", lockMetrics);
+        ReflectionTestUtils.setField(leaseRenewalScheduler, "enabled", "batch".equals(renewal));
+        ReflectionTestUtils.setField(leaseRenewalScheduler, "lease", 30000L);
+        ReflectionTestUtils.setField(leaseRenewalScheduler, "batchSize", 500);
+        leaseRenewalScheduler.init();
+
+        RedissonDistributedLock redissonDistributedLock = new RedissonDistributedLock();
+        ReflectionTestUtils.setField(redissonDistributedLock, "redissonClient", redis.redissonClient);
+        ReflectionTestUtils.setField(redissonDistributedLock, "leaseRenewalScheduler", leaseRenewalScheduler);
+        ReflectionTestUtils.setField(redissonDistributedLock, "prefix", "distributed-lock");
+        distributedLock = redissonDistributedLock;
+
+        localLockStriper = new LocalLockStriper(1024);
+    }
+
+    @TearDown
+    public void tearDown() {
+        leaseRenewalScheduler.destroy();
+        lockMetrics.destroy();
+    }
+
+    @Benchmark
+    public void lock() throws Exception {
+        List<String> keys = nextKeys();
+        List<Lock> localLocks = localLock ? localLockStriper.lock(keys, LockMode.EXCLUSIVE, 0, TimeUnit.SECONDS) : null;
+        try {
+            RLock lock = keys.size() > 1
+                    ? distributedLock.lock(keys, lockTime, TimeUnit.SECONDS, fair, LockMode.EXCLUSIVE)
+                    : distributedLock.lock(keys.get(0), lockTime, TimeUnit.SECONDS, fair);
+            distributedLock.unlock(lock);
+        } finally {
+            localLockStriper.unlock(localLocks);
+        }
+    }
+
+    @Benchmark
+    public boolean tryLock() throws Exception {
+        List<String> keys = nextKeys();
+        List<Lock> localLocks = null;
+        if (localLock) {
+            localLocks = localLockStriper.lock(keys, LockMode.EXCLUSIVE, TRY_TIME, TimeUnit.SECONDS);
+            if (localLocks == null) {
+                return false;
+            }
+        }
+        try {
+            RLock lock = keys.size() > 1
+                    ? distributedLock.tryLock(keys, TRY_TIME, lockTime, TimeUnit.SECONDS, fair, LockMode.EXCLUSIVE)
+                    : distributedLock.tryLock(keys.get(0), TRY_TIME, lockTime, TimeUnit.SECONDS, fair);
+            if (lock == null) {
+                return false;
+            }
+            distributedLock.unlock(lock);
+            return true;
+        } finally {
+            localLockStriper.unlock(localLocks);
+        }
+    }
+
+    /**
+     * 随机取keysPerLock个key，与LockMetadata一样去重后按字典序排序
+     */
+    private List<String> nextKeys() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (keysPerLock == 1) {
+            List<String> single = new ArrayList<>(1);
+            single.add(lockKeys[random.nextInt(keys)]);
+            return single;
+        }
+        TreeSet<String> picked = new TreeSet<>();
+        for (int i = 0; i < keysPerLock; i++) {
+            picked.add(lockKeys[random.nextInt(keys)]);
+        }
+        return new ArrayList<>(picked);
+    }
+}
@@ -1,5 +1,7 @@
 package com.mrlu.lock.anno;
 
+import com.mrlu.lock.constant.LockMode;
+
 import java.lang.annotation.*;
 import java.util.concurrent.TimeUnit;
 
@@ -14,7 +16,7 @@ public @interface DistributedLock {
 
     /**
      * 保证业务接口的key的唯一性，否则失去了分布式锁的意义 锁key
-     * 支持使用spEl表达式
+     * 支持使用spEl表达式，表达式返回集合或数组时对所有key加联锁，如：{'person-' + #id, 'animal-' + #id}
      */
     String key();
 
@@ -50,4 +52,22 @@ public @interface DistributedLock {
      */
     boolean fair() default false;
 
+    /**
+     * 加锁模式，默认互斥锁；读多写少的资源可以用READ/WRITE，读请求之间可以并行
+     */
+    LockMode mode() default LockMode.EXCLUSIVE;
+
+    /**
+     * 是否先获取本地分段锁，同一节点竞争同一个key的线程先在本地排队，只有一个线程去竞争redisson锁
+     * 适合单节点内热点key竞争激烈的场景，本地锁为非公平锁；本地锁与线程绑定，不支持返回CompletableFuture的异步方法
+     */
+    boolean localLock() default false;
+
+    /**
+     * 是否使用fencing token，加锁时原子递增token，方法内通过FencingTokenHolder获取，
+     * 配合FencingUpdateWrappers在更新时校验token，防止锁过期后旧持有者覆盖新数据
+     * 仅支持单个key的互斥非公平锁，不支持异步方法
+     */
+    boolean fencing() default false;
+
 }
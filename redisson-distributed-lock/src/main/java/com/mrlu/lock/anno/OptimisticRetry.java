@@ -0,0 +1,33 @@
+package com.mrlu.lock.anno;
+
+import java.lang.annotation.*;
+
+/**
+ * @author 简单de快乐
+ *
+ * 乐观锁重试，适合计数器类的读-改-写更新
+ * 方法内基于版本号做条件更新，更新失败时抛出OptimisticLockConflictException，由切面按退避策略重试，不需要redis锁
+ * 方法同时标注了@DistributedLock时，redisson.lock.optimistic-enabled=true时走乐观锁，false（默认）时仍加分布式锁
+ * 每次重试都是一个新的事务，所以需要标注在事务方法的外层
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface OptimisticRetry {
+
+    /**
+     * 最大尝试次数（包含第一次）
+     */
+    int maxAttempts() default 5;
+
+    /**
+     * 第一次重试前的退避时间（毫秒），之后每次翻倍
+     */
+    long backoff() default 10;
+
+    /**
+     * 最大退避时间（毫秒）
+     */
+    long maxBackoff() default 200;
+
+}
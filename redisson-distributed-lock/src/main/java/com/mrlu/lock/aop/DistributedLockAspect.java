@@ -2,9 +2,14 @@ package com.mrlu.lock.aop;
 
 import com.mrlu.exception.ServiceException;
 import com.mrlu.lock.anno.DistributedLock;
+import com.mrlu.lock.constant.LockMode;
+import com.mrlu.lock.core.FencedLock;
+import com.mrlu.lock.core.FencingTokenHolder;
 import com.mrlu.lock.core.IDistributedLock;
+import com.mrlu.lock.core.LocalLockStriper;
+import com.mrlu.lock.core.LockMetadata;
+import com.mrlu.lock.core.LockMetrics;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang.StringUtils;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
@@ -12,19 +17,19 @@ import org.aspectj.lang.annotation.Pointcut;
 import org.aspectj.lang.reflect.MethodSignature;
 import org.redisson.api.RLock;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.annotation.Order;
-import org.springframework.expression.EvaluationContext;
-import org.springframework.expression.Expression;
-import org.springframework.expression.ExpressionParser;
-import org.springframework.expression.common.TemplateParserContext;
-import org.springframework.expression.spel.standard.SpelExpressionParser;
-import org.springframework.expression.spel.support.StandardEvaluationContext;
 import org.springframework.stereotype.Component;
 
 import java.lang.reflect.Method;
-import java.util.Objects;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
 
 /**
  * @author 简单de快乐
@@ -41,104 +46,210 @@ public class DistributedLockAspect {
     @Autowired
     private IDistributedLock idistributedLock;
 
-    private static final String SPEL_PREFIX = "#";
+    @Autowired
+    private LocalLockStriper localLockStriper;
+
+    @Autowired
+    private LockMetrics lockMetrics;
+
+    /**
+     * 方法标注了@OptimisticRetry时是否使用乐观锁代替分布式锁，默认关闭，需要显式开启
+     */
+    @Value("${redisson.lock.optimistic-enabled:false}")
+    private boolean optimisticEnabled;
 
     /**
-     * SpEL表达式解析
+     * 异步加锁的持有者标识，从负数开始，避免和线程id重复
      */
-    private SpelExpressionParser spelExpressionParser = new SpelExpressionParser();
+    private static final AtomicLong LOCK_ID = new AtomicLong(Long.MIN_VALUE);
 
     /**
-     * 用于获取方法参数名字
+     * 方法 -> 解析好的注解元数据
      */
-    private DefaultParameterNameDiscoverer nameDiscoverer = new DefaultParameterNameDiscoverer();
+    private final Map<Method, LockMetadata> metadataCache = new ConcurrentHashMap<>();
 
     @Pointcut("@annotation(com.mrlu.lock.anno.DistributedLock)")
     public void distributorLock() {
     }
 
-
-    private String getLockKey(ProceedingJoinPoint point, DistributedLock distributedLock) {
-        String lockKey = distributedLock.key();
-        String keyPrefix = distributedLock.keyPrefix();
-        if (StringUtils.isBlank(lockKey)) {
-            throw new ServiceException("Lock key cannot be empty");
-        }
-        if (lockKey.contains(SPEL_PREFIX)) {
-            checkSpEL(lockKey);
-            MethodSignature methodSignature = (MethodSignature) point.getSignature();
-            // 获取方法参数值
-            Object[] args = point.getArgs();
-            lockKey = getValBySpEL(lockKey, methodSignature, args);
+    /**
+     * 获取方法对应的元数据，第一次调用时解析并校验注解
+     */
+    private LockMetadata getMetadata(Method method) {
+        LockMetadata metadata = metadataCache.get(method);
+        if (metadata == null) {
+            metadata = metadataCache.computeIfAbsent(method,
+                    m -> new LockMetadata(m, m.getAnnotation(DistributedLock.class)));
         }
-        lockKey = StringUtils.isBlank(keyPrefix) ? lockKey : keyPrefix + lockKey;
-        return lockKey;
+        return metadata;
     }
 
     /**
-     * 解析spEL表达式
-     *
-     * @param spEL
-     * @param methodSignature
-     * @param args
-     * @return
+     * 按加锁模式获取锁，多个key时一次性加联锁，key已排好序
      */
-    private String getValBySpEL(String spEL, MethodSignature methodSignature, Object[] args) {
-        // 获取方法形参名数组
-        String[] paramNames = nameDiscoverer.getParameterNames(methodSignature.getMethod());
-        if (paramNames == null || paramNames.length < 1) {
-            throw new ServiceException("arg for Lock key cannot be empty");
+    private RLock lock(List<String> lockKeys, LockMetadata metadata, long tryTime, long lockTime, TimeUnit unit) throws Exception {
+        boolean tryLock = metadata.isTryLock();
+        LockMode mode = metadata.getMode();
+        if (lockKeys.size() > 1) {
+            return tryLock ? idistributedLock.tryLock(lockKeys, tryTime, lockTime, unit, metadata.isFair(), mode)
+                    : idistributedLock.lock(lockKeys, lockTime, unit, metadata.isFair(), mode);
         }
-        Expression expression = spelExpressionParser.parseExpression(spEL);
-        // spring的表达式上下文对象
-        EvaluationContext context = new StandardEvaluationContext();
-        // 给上下文赋值
-        for (int i = 0; i < args.length; i++) {
-            context.setVariable(paramNames[i], args[i]);
+        String lockKey = lockKeys.get(0);
+        switch (mode) {
+            case READ:
+                return tryLock ? idistributedLock.tryReadLock(lockKey, tryTime, lockTime, unit)
+                        : idistributedLock.readLock(lockKey, lockTime, unit);
+            case WRITE:
+                return tryLock ? idistributedLock.tryWriteLock(lockKey, tryTime, lockTime, unit)
+                        : idistributedLock.writeLock(lockKey, lockTime, unit);
+            default:
+                return tryLock ? idistributedLock.tryLock(lockKey, tryTime, lockTime, unit, metadata.isFair())
+                        : idistributedLock.lock(lockKey, lockTime, unit, metadata.isFair());
         }
-        return Objects.requireNonNull(expression.getValue(context)).toString();
     }
 
     /**
-     * SpEL 表达式校验
-     *
-     * @param spEL
-     * @return
+     * 获取带fencing token的锁，只支持单个key
      */
-    private void checkSpEL(String spEL) {
-        try {
-            ExpressionParser parser = new SpelExpressionParser();
-            parser.parseExpression(spEL, new TemplateParserContext());
-        } catch (Exception e) {
-            throw new ServiceException("Invalid SpEL expression [" + spEL + "]");
+    private FencedLock fencedLock(List<String> lockKeys, LockMetadata metadata, long tryTime, long lockTime, TimeUnit unit) throws Exception {
+        if (lockKeys.size() > 1) {
+            throw new ServiceException("fencing lock only supports single key, keys=" + lockKeys);
         }
+        return metadata.isTryLock() ? idistributedLock.tryFencedLock(lockKeys.get(0), tryTime, lockTime, unit)
+                : idistributedLock.fencedLock(lockKeys.get(0), lockTime, unit);
     }
 
     @Around("distributorLock()")
     public Object around(ProceedingJoinPoint point) throws Throwable {
         MethodSignature signature = (MethodSignature) point.getSignature();
         Method method = signature.getMethod();
-        DistributedLock annotation = method.getAnnotation(DistributedLock.class);
-        TimeUnit timeUnit = annotation.unit();
-        boolean tryLock = annotation.tryLock();
-        boolean fair = annotation.fair();
-        long lockTime = annotation.lockTime();
-        long tryTime = annotation.tryTime();
-        String lockKey = getLockKey(point, annotation);
+        LockMetadata metadata = getMetadata(method);
+        if (optimisticEnabled && metadata.isOptimistic()) {
+            // 走乐观锁条件更新，由OptimisticRetryAspect负责冲突重试
+            return point.proceed();
+        }
+        TimeUnit unit = metadata.getUnit();
+        long lockTime = metadata.getLockTime();
+        long tryTime = metadata.getTryTime();
+        List<String> lockKeys = metadata.lockKeys(point.getArgs());
+        if (metadata.isAsync()) {
+            return aroundAsync(point, metadata, lockKeys);
+        }
+        List<Lock> localLocks = null;
         RLock lock = null;
+        long start = System.nanoTime();
+        LockMetrics.Hold hold = null;
+        boolean acquired = false;
+        boolean fenced = false;
+        Long previousToken = null;
         try {
-            if (tryLock) {
-                lock = idistributedLock.tryLock(lockKey, tryTime, lockTime, timeUnit, fair);
+            if (metadata.isLocalLock()) {
+                // 先在本地排队，同一节点只有一个线程去竞争redisson锁
+                localLocks = localLockStriper.lock(lockKeys, metadata.getMode(), metadata.isTryLock() ? tryTime : 0, unit);
+                if (localLocks == null) {
+                    throw new ServiceException("acquire local lock timeout, keys=" + lockKeys);
+                }
+                if (metadata.isTryLock()) {
+                    // 本地排队消耗的时间从redis的等待时间中扣除
+                    tryTime = unit.toMillis(tryTime) - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    lockTime = unit.toMillis(lockTime);
+                    unit = TimeUnit.MILLISECONDS;
+                    if (tryTime <= 0) {
+                        throw new ServiceException("acquire lock timeout, keys=" + lockKeys);
+                    }
+                }
+            }
+            if (metadata.isFencing()) {
+                FencedLock fencedLock = fencedLock(lockKeys, metadata, tryTime, lockTime, unit);
+                if (fencedLock != null) {
+                    lock = fencedLock.getLock();
+                    previousToken = FencingTokenHolder.set(fencedLock.getToken());
+                    fenced = true;
+                }
             } else {
-                lock = idistributedLock.lock(lockKey, lockTime, timeUnit, fair);
+                lock = lock(lockKeys, metadata, tryTime, lockTime, unit);
+            }
+            if (lock == null) {
+                throw new ServiceException("acquire lock timeout, keys=" + lockKeys);
             }
-            log.info("lock entry={}", lock.getName());
+            acquired = true;
+            hold = lockMetrics.recordAcquire(metadata.getMetricName(), lockKeys, System.nanoTime() - start, true,
+                    metadata.getLockTime(), metadata.getUnit());
+            log.info("lock entry={}", lockKeys);
             return point.proceed();
         } catch (Exception e) {
+            if (!acquired) {
+                lockMetrics.recordAcquire(metadata.getMetricName(), lockKeys, System.nanoTime() - start, false,
+                        metadata.getLockTime(), metadata.getUnit());
+            }
+            // 加锁超时等ServiceException原样抛出，避免重复包装
+            if (e instanceof ServiceException) {
+                throw e;
+            }
             throw new ServiceException(e);
         } finally {
-            idistributedLock.unlock(lock);
+            if (fenced) {
+                FencingTokenHolder.restore(previousToken);
+            }
+            try {
+                idistributedLock.unlock(lock);
+            } finally {
+                localLockStriper.unlock(localLocks);
+                lockMetrics.recordRelease(hold);
+            }
         }
     }
 
+
+    /**
+     * 方法返回CompletableFuture时异步加锁：加锁 -> 执行 -> 方法返回的future完成后解锁，等锁期间不占用线程
+     * 本地分段锁与线程绑定，异步方法不允许开启localLock（解析注解时已校验）
+     */
+    @SuppressWarnings("unchecked")
+    private CompletableFuture<Object> aroundAsync(ProceedingJoinPoint point, LockMetadata metadata, List<String> lockKeys) {
+        long lockId = LOCK_ID.getAndIncrement();
+        long start = System.nanoTime();
+        CompletableFuture<RLock> acquire = metadata.isTryLock()
+                ? idistributedLock.tryLockAsync(lockKeys, metadata.getTryTime(), metadata.getLockTime(), metadata.getUnit(),
+                        metadata.isFair(), metadata.getMode(), lockId)
+                : idistributedLock.lockAsync(lockKeys, metadata.getLockTime(), metadata.getUnit(),
+                        metadata.isFair(), metadata.getMode(), lockId);
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        // 加锁回调在redisson的netty线程上，业务方法切到公共线程池执行
+        acquire.whenCompleteAsync((lock, e) -> {
+            if (e != null || lock == null) {
+                lockMetrics.recordAcquire(metadata.getMetricName(), lockKeys, System.nanoTime() - start, false,
+                        metadata.getLockTime(), metadata.getUnit());
+                future.completeExceptionally(e != null ? e : new ServiceException("acquire lock timeout, keys=" + lockKeys));
+                return;
+            }
+            LockMetrics.Hold hold = lockMetrics.recordAcquire(metadata.getMetricName(), lockKeys, System.nanoTime() - start, true,
+                    metadata.getLockTime(), metadata.getUnit());
+            log.info("lock entry={}", lockKeys);
+            CompletionStage<Object> result;
+            try {
+                result = (CompletionStage<Object>) point.proceed();
+            } catch (Throwable t) {
+                CompletableFuture<Object> failed = new CompletableFuture<>();
+                failed.completeExceptionally(t);
+                result = failed;
+            }
+            if (result == null) {
+                result = CompletableFuture.completedFuture(null);
+            }
+            result.whenComplete((value, error) -> idistributedLock.unlockAsync(lock, lockId).whenComplete((v, unlockError) -> {
+                lockMetrics.recordRelease(hold);
+                if (error != null) {
+                    future.completeExceptionally(error);
+                } else if (unlockError != null) {
+                    log.error("释放分布式锁异常", unlockError);
+                    future.completeExceptionally(unlockError);
+                } else {
+                    future.complete(value);
+                }
+            }));
+        });
+        return future;
+    }
+
 }
@@ -0,0 +1,69 @@
+package com.mrlu.lock.aop;
+
+import com.mrlu.lock.anno.OptimisticRetry;
+import com.mrlu.lock.core.OptimisticLockConflictException;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author 简单de快乐
+ *
+ * 乐观锁重试切面，优先级比分布式锁切面和事务切面都高，每次重试都重新开启事务
+ */
+@Component
+@Aspect
+@Order(0)
+@Slf4j
+public class OptimisticRetryAspect {
+
+    @Pointcut("@annotation(com.mrlu.lock.anno.OptimisticRetry)")
+    public void optimisticRetry() {
+    }
+
+    @Around("optimisticRetry()")
+    public Object around(ProceedingJoinPoint point) throws Throwable {
+        OptimisticRetry retry = ((MethodSignature) point.getSignature()).getMethod().getAnnotation(OptimisticRetry.class);
+        int maxAttempts = Math.max(1, retry.maxAttempts());
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return point.proceed();
+            } catch (Throwable e) {
+                if (attempt >= maxAttempts || !isConflict(e)) {
+                    throw e;
+                }
+                long backoff = backoff(retry, attempt);
+                log.debug("乐观锁更新冲突，{}ms后第{}次重试，method={}", backoff, attempt, point.getSignature().toShortString());
+                TimeUnit.MILLISECONDS.sleep(backoff);
+            }
+        }
+    }
+
+    /**
+     * 指数退避加随机抖动，避免冲突的请求同时重试
+     */
+    private long backoff(OptimisticRetry retry, int attempt) {
+        long backoff = Math.min(retry.maxBackoff(), retry.backoff() << Math.min(attempt - 1, 30));
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    /**
+     * 冲突异常可能被分布式锁切面包装过，沿着cause查找
+     */
+    private boolean isConflict(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof OptimisticLockConflictException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,25 @@
+package com.mrlu.lock.constant;
+
+/**
+ * @author 简单de快乐
+ *
+ * 加锁模式
+ */
+public enum LockMode {
+
+    /**
+     * 互斥锁，支持公平锁
+     */
+    EXCLUSIVE,
+
+    /**
+     * 读锁，同key的读锁之间共享，与写锁互斥
+     */
+    READ,
+
+    /**
+     * 写锁，与同key的读锁、写锁都互斥
+     */
+    WRITE
+
+}
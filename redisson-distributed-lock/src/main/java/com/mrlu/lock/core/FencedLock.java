@@ -0,0 +1,20 @@
+package com.mrlu.lock.core;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.redisson.api.RLock;
+
+/**
+ * @author 简单de快乐
+ *
+ * 带fencing token的锁，token在加锁的同一个脚本中递增，后获取锁的持有者token一定更大
+ */
+@Getter
+@AllArgsConstructor
+public class FencedLock {
+
+    private final RLock lock;
+
+    private final long token;
+
+}
@@ -0,0 +1,55 @@
+package com.mrlu.lock.core;
+
+import com.mrlu.exception.ServiceException;
+
+/**
+ * @author 简单de快乐
+ *
+ * 当前线程持有的fencing token，@DistributedLock(fencing = true)的方法内可以获取
+ */
+public final class FencingTokenHolder {
+
+    private static final ThreadLocal<Long> TOKEN = new ThreadLocal<>();
+
+    private FencingTokenHolder() {
+    }
+
+    /**
+     * 当前线程的fencing token，不在fencing锁内时返回null
+     */
+    public static Long get() {
+        return TOKEN.get();
+    }
+
+    /**
+     * 当前线程的fencing token，不在fencing锁内时抛出异常
+     */
+    public static long require() {
+        Long token = TOKEN.get();
+        if (token == null) {
+            throw new ServiceException("no fencing token, method must be annotated with @DistributedLock(fencing = true)");
+        }
+        return token;
+    }
+
+    /**
+     * 设置当前线程的fencing token
+     * @return 之前的token，嵌套加锁时用于恢复
+     */
+    public static Long set(Long token) {
+        Long previous = TOKEN.get();
+        TOKEN.set(token);
+        return previous;
+    }
+
+    /**
+     * 恢复为之前的token
+     */
+    public static void restore(Long previous) {
+        if (previous == null) {
+            TOKEN.remove();
+        } else {
+            TOKEN.set(previous);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.mrlu.lock.core;
+
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import com.baomidou.mybatisplus.core.toolkit.support.SFunction;
+
+/**
+ * @author 简单de快乐
+ *
+ * 基于fencing token的MyBatis-Plus更新条件
+ * 表中增加fence_token列（bigint not null default 0），更新时追加 AND fence_token <= 当前token，并把fence_token更新为当前token。
+ * 锁过期后被新持有者抢到锁，新持有者写入更大的token，旧持有者之后的更新影响行数为0，不会覆盖新数据。
+ * 同一个持有者多次更新时token相同，因此条件是小于等于
+ * 示例（t_person增加fence_token列后）：personService.update(FencingUpdateWrappers.guard(new UpdateWrapper<Person>()
+ *          .eq("id", id).set("age", age)))
+ */
+public final class FencingUpdateWrappers {
+
+    public static final String FENCE_TOKEN_COLUMN = "fence_token";
+
+    private FencingUpdateWrappers() {
+    }
+
+    /**
+     * 使用默认的fence_token列追加fencing条件
+     */
+    public static <T> UpdateWrapper<T> guard(UpdateWrapper<T> wrapper) {
+        return guard(wrapper, FENCE_TOKEN_COLUMN);
+    }
+
+    /**
+     * 使用指定列追加fencing条件
+     */
+    public static <T> UpdateWrapper<T> guard(UpdateWrapper<T> wrapper, String column) {
+        long token = FencingTokenHolder.require();
+        return wrapper.le(column, token).set(column, token);
+    }
+
+    /**
+     * lambda方式追加fencing条件
+     */
+    public static <T> LambdaUpdateWrapper<T> guard(LambdaUpdateWrapper<T> wrapper, SFunction<T, Long> column) {
+        long token = FencingTokenHolder.require();
+        return wrapper.le(column, token).set(column, token);
+    }
+}
@@ -1,7 +1,11 @@
 package com.mrlu.lock.core;
 
+import com.mrlu.lock.constant.LockMode;
 import org.redisson.api.RLock;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -53,10 +57,154 @@ public interface IDistributedLock {
     RLock tryLock(String key, long tryTime, long lockTime, TimeUnit unit, boolean fair) throws Exception;
 
     /**
-     * 解锁
-     * @param lock
+     * 对多个key加联锁,失败一直等待直到全部获取
+     *
+     * @param keys     锁的key，调用方需保证顺序一致
+     * @param lockTime 加锁的时间，如果lockTime为-1，则保持锁定直到显式解锁
+     * @param unit     {@code lockTime} 参数的时间单位
+     * @param fair     是否公平锁，仅EXCLUSIVE模式有效
+     * @param mode     加锁模式
+     * @return 联锁对象
+     */
+    RLock lock(List<String> keys, long lockTime, TimeUnit unit, boolean fair, LockMode mode);
+
+    /**
+     * 尝试对多个key加联锁，在tryTime内无法全部获取则返回null
+     *
+     * @param keys     锁的key，调用方需保证顺序一致
+     * @param tryTime  获取锁的最大尝试时间
+     * @param lockTime 加锁的时间
+     * @param unit     {@code tryTime @code lockTime} 参数的时间单位
+     * @param fair     是否公平锁，仅EXCLUSIVE模式有效
+     * @param mode     加锁模式
+     * @return
+     * @throws Exception
+     */
+    RLock tryLock(List<String> keys, long tryTime, long lockTime, TimeUnit unit, boolean fair, LockMode mode) throws Exception;
+
+    /**
+     * 获取读锁,失败一直等待直到获取锁，同key的读锁之间不互斥
+     *
+     * @param key      锁的key
+     * @param lockTime 加锁的时间，如果lockTime为-1，则保持锁定直到显式解锁
+     * @param unit     {@code lockTime} 参数的时间单位
+     * @return 锁对象
+     */
+    RLock readLock(String key, long lockTime, TimeUnit unit);
+
+    /**
+     * 获取写锁,失败一直等待直到获取锁
+     *
+     * @param key      锁的key
+     * @param lockTime 加锁的时间，如果lockTime为-1，则保持锁定直到显式解锁
+     * @param unit     {@code lockTime} 参数的时间单位
+     * @return 锁对象
+     */
+    RLock writeLock(String key, long lockTime, TimeUnit unit);
+
+    /**
+     * 尝试获取读锁，在tryTime内获取不到返回null
+     *
+     * @param key      锁的key
+     * @param tryTime  获取锁的最大尝试时间
+     * @param lockTime 加锁的时间
+     * @param unit     {@code tryTime @code lockTime} 参数的时间单位
+     * @return
      * @throws Exception
      */
+    RLock tryReadLock(String key, long tryTime, long lockTime, TimeUnit unit) throws Exception;
+
+    /**
+     * 尝试获取写锁，在tryTime内获取不到返回null
+     *
+     * @param key      锁的key
+     * @param tryTime  获取锁的最大尝试时间
+     * @param lockTime 加锁的时间
+     * @param unit     {@code tryTime @code lockTime} 参数的时间单位
+     * @return
+     * @throws Exception
+     */
+    RLock tryWriteLock(String key, long tryTime, long lockTime, TimeUnit unit) throws Exception;
+
+    /**
+     * 获取带fencing token的锁,失败一直等待直到获取锁，加锁和递增token在同一个脚本中完成
+     *
+     * @param key      锁的key
+     * @param lockTime 加锁的时间，如果lockTime小于等于0，则由看门狗自动续期直到显式解锁
+     * @param unit     {@code lockTime} 参数的时间单位
+     * @return 锁和token
+     */
+    FencedLock fencedLock(String key, long lockTime, TimeUnit unit);
+
+    /**
+     * 尝试获取带fencing token的锁，在tryTime内获取不到返回null
+     *
+     * @param key      锁的key
+     * @param tryTime  获取锁的最大尝试时间
+     * @param lockTime 加锁的时间
+     * @param unit     {@code tryTime @code lockTime} 参数的时间单位
+     * @return 锁和token
+     * @throws Exception
+     */
+    FencedLock tryFencedLock(String key, long tryTime, long lockTime, TimeUnit unit) throws Exception;
+
+    /**
+     * 解锁，单锁和联锁的规则一致：
+     * 当前线程已不再持有锁（租约过期，或过期后被其他线程获取）时，记录日志并抛出ServiceException，
+     * 联锁中其余仍持有的key照常释放，调用方据此得知临界区的互斥可能已被破坏
+     * @param lock 加锁返回的锁对象，为null时不做任何操作
+     * @throws com.mrlu.exception.ServiceException 锁已不由当前线程持有
+     */
     void unlock(RLock lock);
 
+    /**
+     * 异步获取锁，等待期间不占用调用线程
+     * 异步加锁不绑定线程，由调用方提供持有者标识lockId，解锁时需使用同一个lockId
+     *
+     * @param keys     锁的key，多个key时加联锁，调用方需保证顺序一致
+     * @param lockTime 加锁的时间，如果lockTime小于等于0，则由看门狗自动续期直到显式解锁
+     * @param unit     {@code lockTime} 参数的时间单位
+     * @param fair     是否公平锁，仅EXCLUSIVE模式有效
+     * @param mode     加锁模式
+     * @param lockId   锁持有者标识
+     * @return 获取到锁后完成的future
+     */
+    CompletableFuture<RLock> lockAsync(List<String> keys, long lockTime, TimeUnit unit, boolean fair, LockMode mode, long lockId);
+
+    /**
+     * 异步尝试获取锁，在tryTime内获取不到时future的结果为null
+     *
+     * @param keys     锁的key，多个key时加联锁，调用方需保证顺序一致
+     * @param tryTime  获取锁的最大尝试时间
+     * @param lockTime 加锁的时间
+     * @param unit     {@code tryTime @code lockTime} 参数的时间单位
+     * @param fair     是否公平锁，仅EXCLUSIVE模式有效
+     * @param mode     加锁模式
+     * @param lockId   锁持有者标识
+     * @return 获取结果
+     */
+    CompletableFuture<RLock> tryLockAsync(List<String> keys, long tryTime, long lockTime, TimeUnit unit, boolean fair, LockMode mode, long lockId);
+
+    /**
+     * 异步获取单个key的互斥锁
+     */
+    default CompletableFuture<RLock> lockAsync(String key, long lockTime, TimeUnit unit, boolean fair, long lockId) {
+        return lockAsync(Collections.singletonList(key), lockTime, unit, fair, LockMode.EXCLUSIVE, lockId);
+    }
+
+    /**
+     * 异步尝试获取单个key的互斥锁
+     */
+    default CompletableFuture<RLock> tryLockAsync(String key, long tryTime, long lockTime, TimeUnit unit, boolean fair, long lockId) {
+        return tryLockAsync(Collections.singletonList(key), tryTime, lockTime, unit, fair, LockMode.EXCLUSIVE, lockId);
+    }
+
+    /**
+     * 异步解锁
+     * @param lock   异步获取的锁
+     * @param lockId 加锁时使用的持有者标识
+     * @return 解锁完成的future
+     */
+    CompletableFuture<Void> unlockAsync(RLock lock, long lockId);
+
 }
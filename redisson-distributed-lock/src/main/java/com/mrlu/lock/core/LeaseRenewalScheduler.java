@@ -0,0 +1,281 @@
+package com.mrlu.lock.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.Redisson;
+import org.redisson.RedissonLock;
+import org.redisson.RedissonReadLock;
+import org.redisson.RedissonWriteLock;
+import org.redisson.api.RLock;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * @author 简单de快乐
+ *
+ * 集中式的锁续期调度器，代替redisson看门狗逐个锁续期
+ * （1）lockTime小于等于0的锁不再使用看门狗，而是以固定的lease加锁，并登记到调度器
+ * （2）调度器每个tick找出剩余时间不足lease/3的锁，按hash slot分组，每组每batchSize个锁合并成一次lua脚本调用批量续期，
+ *      持有时间短的锁在到期前就已释放，不会产生任何续期请求
+ * （3）脚本校验持有者后才续期，续期失败（锁已过期或被释放）的锁从调度器中移除
+ * （4）tick间隔随观测到的持有时间（EWMA）调整：取平均持有时间的一半，限制在[lease/20, lease/6]之间，
+ *      持有时间短时扫描更及时，持有时间长时减少扫描，上限lease/6保证到期前至少还有lease/6的余量完成续期
+ * 只支持互斥锁（含公平锁、fencing锁）的同步加锁，读写锁和异步加锁仍使用看门狗；
+ * 非集群模式下所有key的slot相同，集群模式下同一个脚本只包含同一个slot的key，避免CROSSSLOT
+ */
+@Slf4j
+@Component
+public class LeaseRenewalScheduler {
+
+    private static final String RENEW_SCRIPT =
+            "local result = {} " +
+            "for i = 1, #KEYS do " +
+            "  if redis.call('hexists', KEYS[i], ARGV[i + 1]) == 1 then " +
+            "    redis.call('pexpire', KEYS[i], ARGV[1]) " +
+            "    result[i] = 1 " +
+            "  else " +
+            "    result[i] = 0 " +
+            "  end " +
+            "end " +
+            "return result";
+
+    /**
+     * 持有时间EWMA的平滑系数
+     */
+    private static final double HOLD_EWMA_ALPHA = 0.2;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Resource
+    private LockMetrics lockMetrics;
+
+    @Value("${redisson.lock.batch-renewal.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * 每次加锁/续期的过期时间（毫秒）
+     */
+    @Value("${redisson.lock.batch-renewal.lease:30000}")
+    private long lease;
+
+    /**
+     * 每次脚本调用最多续期的锁数量
+     */
+    @Value("${redisson.lock.batch-renewal.batch-size:500}")
+    private int batchSize;
+
+    /**
+     * 毫秒时钟，测试时可以替换
+     */
+    private LongSupplier clock = System::currentTimeMillis;
+
+    /**
+     * 锁名#持有者 -> 租约
+     */
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+
+    /**
+     * 最近释放的锁的持有时间EWMA（毫秒），没有样本时为-1
+     */
+    private volatile double holdEwma = -1;
+
+    private ScheduledExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "lock-lease-renewal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.schedule(this::tick, nextTick(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 锁是否由调度器续期
+     */
+    public boolean supports(RLock lock) {
+        return enabled && lock instanceof RedissonLock
+                && !(lock instanceof RedissonReadLock) && !(lock instanceof RedissonWriteLock);
+    }
+
+    public long getLease() {
+        return lease;
+    }
+
+    /**
+     * 当前线程加锁成功后登记，重入时只增加计数
+     */
+    public void register(RLock lock) {
+        String owner = owner();
+        leases.compute(lock.getName() + "#" + owner, (k, v) -> {
+            Lease l = v == null ? new Lease(lock.getName(), owner, slot(lock.getName()), clock.getAsLong()) : v;
+            l.holds++;
+            l.expireAt = clock.getAsLong() + lease;
+            return l;
+        });
+    }
+
+    /**
+     * 当前线程解锁前注销，重入的锁全部退出后才停止续期
+     */
+    public void unregister(RLock lock) {
+        leases.computeIfPresent(lock.getName() + "#" + owner(), (k, v) -> {
+            if (--v.holds > 0) {
+                return v;
+            }
+            // 重入的锁全部退出，记录一次持有时间
+            recordHold(clock.getAsLong() - v.registeredAt);
+            return null;
+        });
+    }
+
+    /**
+     * 当前登记的锁数量
+     */
+    public int size() {
+        return leases.size();
+    }
+
+    /**
+     * 当前的tick间隔（毫秒）
+     */
+    public long nextTick() {
+        long min = Math.max(lease / 20, 100);
+        long max = Math.max(lease / 6, min);
+        double ewma = holdEwma;
+        if (ewma < 0) {
+            return max;
+        }
+        return Math.min(max, Math.max(min, (long) (ewma / 2)));
+    }
+
+    private void recordHold(long holdMillis) {
+        double ewma = holdEwma;
+        holdEwma = ewma < 0 ? holdMillis : ewma + HOLD_EWMA_ALPHA * (holdMillis - ewma);
+    }
+
+    private void tick() {
+        try {
+            renew();
+        } catch (Exception e) {
+            log.error("批量续期分布式锁异常", e);
+        } finally {
+            if (!executor.isShutdown()) {
+                executor.schedule(this::tick, nextTick(), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void renew() {
+        long now = clock.getAsLong();
+        // 按slot分组，集群模式下一个脚本只能包含同一个slot的key
+        Map<Integer, List<Lease>> due = new HashMap<>();
+        for (Lease l : leases.values()) {
+            if (l.expireAt - now < lease / 3) {
+                due.computeIfAbsent(l.slot, k -> new ArrayList<>()).add(l);
+            }
+        }
+        for (List<Lease> group : due.values()) {
+            for (int from = 0; from < group.size(); from += batchSize) {
+                List<Lease> batch = group.subList(from, Math.min(from + batchSize, group.size()));
+                // 单个批次失败不影响其他批次，失败的锁下个tick会再次尝试
+                try {
+                    renew(batch, now);
+                } catch (Exception e) {
+                    lockMetrics.recordRenewal(0, batch.size());
+                    log.error("批量续期分布式锁异常，本批次{}个锁", batch.size(), e);
+                }
+            }
+        }
+    }
+
+    private void renew(List<Lease> batch, long now) {
+        List<Object> keys = new ArrayList<>(batch.size());
+        Object[] args = new Object[batch.size() + 1];
+        args[0] = String.valueOf(lease);
+        for (int i = 0; i < batch.size(); i++) {
+            keys.add(batch.get(i).name);
+            args[i + 1] = batch.get(i).owner;
+        }
+        List<Long> result = redissonClient.getScript(StringCodec.INSTANCE)
+                .eval(RScript.Mode.READ_WRITE, RENEW_SCRIPT, RScript.ReturnType.MULTI, keys, args);
+        int succeeded = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            Lease l = batch.get(i);
+            if (result.get(i) == 1L) {
+                l.expireAt = now + lease;
+                succeeded++;
+            } else {
+                log.warn("分布式锁续期失败，锁已过期或被释放，name={}，owner={}", l.name, l.owner);
+                leases.remove(l.name + "#" + l.owner, l);
+            }
+        }
+        lockMetrics.recordRenewal(succeeded, batch.size() - succeeded);
+    }
+
+    /**
+     * key所在的hash slot，非集群模式下都是同一个slot
+     */
+    int slot(String name) {
+        if (redissonClient instanceof Redisson) {
+            return ((Redisson) redissonClient).getConnectionManager().calcSlot(name);
+        }
+        return 0;
+    }
+
+    /**
+     * 与redisson锁hash中的field一致：实例id:线程id
+     */
+    private String owner() {
+        return redissonClient.getId() + ":" + Thread.currentThread().getId();
+    }
+
+    private static final class Lease {
+
+        private final String name;
+
+        private final String owner;
+
+        private int holds;
+
+        private volatile long expireAt;
+
+        private final int slot;
+
+        private final long registeredAt;
+
+        private Lease(String name, String owner, int slot, long registeredAt) {
+            this.name = name;
+            this.owner = owner;
+            this.slot = slot;
+            this.registeredAt = registeredAt;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.mrlu.lock.core;
+
+import com.google.common.util.concurrent.Striped;
+import com.mrlu.lock.constant.LockMode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+
+/**
+ * @author 简单de快乐
+ *
+ * 分布式锁前面的本地分段锁
+ * 同一个节点上竞争同一个key的线程先在本地排队，每个节点同一时刻只有一个线程去竞争redisson锁，
+ * 减少热点key下对redis的加锁请求和pub/sub订阅
+ * key按hash映射到固定数量的ReentrantReadWriteLock分段上，不同key可能共用一个分段，但不会影响正确性
+ */
+@Component
+public class LocalLockStriper {
+
+    private final Striped<ReadWriteLock> striped;
+
+    public LocalLockStriper(@Value("${redisson.lock.local-stripes:1024}") int stripes) {
+        this.striped = Striped.readWriteLock(stripes);
+    }
+
+    /**
+     * 获取key对应的本地锁，多个key时按分段顺序加锁，避免死锁
+     *
+     * @param keys    锁的key
+     * @param mode    加锁模式，READ使用读锁，其余使用写锁
+     * @param tryTime 最大等待时间，小于等于0时一直等待
+     * @param unit    {@code tryTime} 参数的时间单位
+     * @return 已获取的本地锁，超时返回null
+     * @throws InterruptedException
+     */
+    public List<Lock> lock(List<String> keys, LockMode mode, long tryTime, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(tryTime);
+        List<Lock> acquired = new ArrayList<>(keys.size());
+        // bulkGet按分段下标排序返回，同一分段可能出现多次，重入即可
+        for (ReadWriteLock readWriteLock : striped.bulkGet(keys)) {
+            Lock lock = mode == LockMode.READ ? readWriteLock.readLock() : readWriteLock.writeLock();
+            if (tryTime <= 0) {
+                lock.lock();
+            } else if (!lock.tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                unlock(acquired);
+                return null;
+            }
+            acquired.add(lock);
+        }
+        return acquired;
+    }
+
+    /**
+     * 按加锁的逆序释放本地锁
+     */
+    public void unlock(List<Lock> locks) {
+        if (locks == null) {
+            return;
+        }
+        for (int i = locks.size() - 1; i >= 0; i--) {
+            locks.get(i).unlock();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.mrlu.lock.core;
+
+import com.mrlu.exception.ServiceException;
+import com.mrlu.expression.MethodArgsEvaluationContext;
+import com.mrlu.lock.anno.DistributedLock;
+import com.mrlu.lock.anno.OptimisticRetry;
+import com.mrlu.lock.constant.LockMode;
+import lombok.Getter;
+import org.apache.commons.lang.StringUtils;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author 简单de快乐
+ *
+ * 方法上@DistributedLock注解解析后的元数据，每个方法只解析一次
+ * key表达式、方法参数名在第一次调用时解析并校验，之后每次请求只做求值
+ * key表达式可以返回集合或数组，此时一次性对所有key加联锁
+ */
+@Getter
+public class LockMetadata {
+
+    private static final String SPEL_PREFIX = "#";
+
+    /**
+     * 表达式多次求值后编译成字节码，编译后的代码执行失败（如参数类型变化）时回退为解释执行
+     */
+    private static final SpelExpressionParser PARSER = new SpelExpressionParser(
+            new SpelParserConfiguration(SpelCompilerMode.MIXED, LockMetadata.class.getClassLoader()));
+
+    private final Method method;
+
+    /**
+     * 监控中使用的名称，未指定keyPrefix时使用类名.方法名
+     */
+    private final String metricName;
+
+    private final String keyPrefix;
+
+    private final boolean tryLock;
+
+    private final long tryTime;
+
+    private final long lockTime;
+
+    private final TimeUnit unit;
+
+    private final boolean fair;
+
+    private final LockMode mode;
+
+    private final boolean localLock;
+
+    private final boolean fencing;
+
+    /**
+     * 方法同时标注了@OptimisticRetry，开启乐观锁时不加分布式锁
+     */
+    private final boolean optimistic;
+
+    /**
+     * 方法返回CompletableFuture/CompletionStage时走异步加锁
+     */
+    private final boolean async;
+
+    /**
+     * 非SpEL时提前拼好的完整key
+     */
+    private final String staticKey;
+
+    /**
+     * SpEL时解析好的key表达式
+     */
+    private final Expression keyExpression;
+
+    /**
+     * SpEL时共享的表达式上下文，只创建一次，支持#参数名、#p0、#a0
+     */
+    private final MethodArgsEvaluationContext evaluationContext;
+
+    public LockMetadata(Method method, DistributedLock annotation) {
+        this.method = method;
+        this.keyPrefix = StringUtils.isBlank(annotation.keyPrefix()) ? "" : annotation.keyPrefix();
+        this.metricName = StringUtils.isNotEmpty(keyPrefix) ? keyPrefix : method.getDeclaringClass().getSimpleName() + "." + method.getName();
+        this.tryLock = annotation.tryLock();
+        this.tryTime = annotation.tryTime();
+        this.lockTime = annotation.lockTime();
+        this.unit = annotation.unit();
+        this.fair = annotation.fair();
+        this.mode = annotation.mode();
+        this.localLock = annotation.localLock();
+        Class<?> returnType = method.getReturnType();
+        this.async = CompletionStage.class.isAssignableFrom(returnType) && returnType.isAssignableFrom(CompletableFuture.class);
+        this.fencing = annotation.fencing();
+        this.optimistic = method.isAnnotationPresent(OptimisticRetry.class);
+        if (fencing && (mode != LockMode.EXCLUSIVE || fair || async)) {
+            throw new ServiceException("fencing lock only supports exclusive non-fair lock on synchronous method");
+        }
+        if (localLock && async) {
+            // 本地分段锁与线程绑定，异步加锁时无法在其他线程释放
+            throw new ServiceException("local lock is not supported on asynchronous method");
+        }
+        String key = annotation.key();
+        if (StringUtils.isBlank(key)) {
+            throw new ServiceException("Lock key cannot be empty");
+        }
+        if (key.contains(SPEL_PREFIX)) {
+            if (method.getParameterCount() < 1) {
+                throw new ServiceException("arg for Lock key cannot be empty");
+            }
+            try {
+                this.keyExpression = PARSER.parseExpression(key);
+            } catch (Exception e) {
+                throw new ServiceException("Invalid SpEL expression [" + key + "]");
+            }
+            this.staticKey = null;
+            this.evaluationContext = new MethodArgsEvaluationContext(method);
+        } else {
+            this.keyExpression = null;
+            this.staticKey = keyPrefix + key;
+            this.evaluationContext = null;
+        }
+    }
+
+    /**
+     * 基于方法参数计算完整的锁key
+     * 表达式返回集合或数组时得到多个key，去重后按字典序排序，保证各节点加锁顺序一致，避免死锁
+     */
+    public List<String> lockKeys(Object[] args) {
+        if (keyExpression == null) {
+            return Collections.singletonList(staticKey);
+        }
+        Object value = Objects.requireNonNull(evaluationContext.getValue(keyExpression, args));
+        if (value instanceof Object[]) {
+            value = Arrays.asList((Object[]) value);
+        }
+        if (!(value instanceof Collection)) {
+            return Collections.singletonList(keyPrefix + value);
+        }
+        Set<String> keys = new TreeSet<>();
+        for (Object key : (Collection<?>) value) {
+            keys.add(keyPrefix + Objects.requireNonNull(key));
+        }
+        if (keys.isEmpty()) {
+            throw new ServiceException("Lock key cannot be empty");
+        }
+        return new ArrayList<>(keys);
+    }
+}
@@ -0,0 +1,277 @@
+package com.mrlu.lock.core;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author 简单de快乐
+ *
+ * 分布式锁监控
+ * （1）lock.wait：获取锁的等待耗时直方图，按锁名称（key前缀）统计
+ * （2）lock.hold：持有锁的耗时直方图
+ * （3）lock.failures：获取锁失败（超时、异常）的计数器
+ * （4）lock.held：当前节点正在持有的锁数量
+ * （5）lock.renewals：批量续期的锁数量，按outcome（success/failure）统计，续期失败说明锁在持有期间已过期或被释放
+ * 持有时间超过lockTime * slowHoldRatio时打印慢持有日志，lockTime小于等于0时按看门狗超时时间计算
+ * 慢持有由定时任务扫描当前持有的锁发现，卡住或一直不释放的持有者也会被报告，每次持有只报告一次
+ */
+@Slf4j
+@Component
+public class LockMetrics {
+
+    private static final String WAIT = "lock.wait";
+
+    private static final String HOLD = "lock.hold";
+
+    private static final String FAILURES = "lock.failures";
+
+    private static final String HELD = "lock.held";
+
+    private static final String RENEWALS = "lock.renewals";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 持有时间超过锁过期时间的比例时打印慢持有日志
+     */
+    @Value("${redisson.lock.slow-hold-ratio:0.8}")
+    private double slowHoldRatio;
+
+    /**
+     * 扫描慢持有的间隔（毫秒）
+     */
+    @Value("${redisson.lock.slow-hold-scan-interval:1000}")
+    private long slowHoldScanInterval;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    private final Map<String, Meters> meters = new ConcurrentHashMap<>();
+
+    private final AtomicInteger held = new AtomicInteger();
+
+    /**
+     * 当前节点正在持有的锁
+     */
+    private final Set<Hold> holds = ConcurrentHashMap.newKeySet();
+
+    private Counter renewalSuccesses;
+
+    private Counter renewalFailures;
+
+    private ScheduledExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder(HELD, held, AtomicInteger::get).register(meterRegistry);
+        renewalSuccesses = Counter.builder(RENEWALS).tag("outcome", "success").register(meterRegistry);
+        renewalFailures = Counter.builder(RENEWALS).tag("outcome", "failure").register(meterRegistry);
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "lock-slow-hold-scan");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::scanSlowHolds, slowHoldScanInterval, slowHoldScanInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 记录一次加锁结果，加锁成功时开始记录持有
+     *
+     * @return 加锁成功时返回持有记录，释放锁时传给{@link #recordRelease(Hold)}；失败时返回null
+     */
+    public Hold recordAcquire(String name, List<String> keys, long waitNanos, boolean acquired, long lockTime, TimeUnit unit) {
+        Meters m = meters(name);
+        m.wait.record(waitNanos, TimeUnit.NANOSECONDS);
+        if (!acquired) {
+            m.failures.increment();
+            return null;
+        }
+        held.incrementAndGet();
+        m.held.incrementAndGet();
+        long expireNanos = lockTime > 0 ? unit.toNanos(lockTime) : TimeUnit.MILLISECONDS.toNanos(redissonClient.getConfig().getLockWatchdogTimeout());
+        Hold hold = new Hold(name, keys, (long) (expireNanos * slowHoldRatio), expireNanos);
+        holds.add(hold);
+        return hold;
+    }
+
+    /**
+     * 记录一次释放锁，两次扫描之间释放的慢持有在这里补充报告
+     */
+    public void recordRelease(Hold hold) {
+        if (hold == null) {
+            return;
+        }
+        holds.remove(hold);
+        long holdNanos = System.nanoTime() - hold.acquiredAt;
+        Meters m = meters(hold.name);
+        m.hold.record(holdNanos, TimeUnit.NANOSECONDS);
+        held.decrementAndGet();
+        m.held.decrementAndGet();
+        if (holdNanos > hold.slowNanos) {
+            warnSlowHold(hold, holdNanos, true);
+        }
+    }
+
+    /**
+     * 记录一批锁的续期结果
+     *
+     * @param succeeded 续期成功的锁数量
+     * @param failed    续期失败（锁已过期、被释放或脚本调用异常）的锁数量
+     */
+    public void recordRenewal(int succeeded, int failed) {
+        if (succeeded > 0) {
+            renewalSuccesses.increment(succeeded);
+        }
+        if (failed > 0) {
+            renewalFailures.increment(failed);
+        }
+    }
+
+    /**
+     * 当前持有超过阈值的锁数量
+     */
+    public int slowHolds() {
+        long now = System.nanoTime();
+        int count = 0;
+        for (Hold hold : holds) {
+            if (now - hold.acquiredAt > hold.slowNanos) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void scanSlowHolds() {
+        try {
+            long now = System.nanoTime();
+            for (Hold hold : holds) {
+                long holdNanos = now - hold.acquiredAt;
+                if (holdNanos > hold.slowNanos) {
+                    warnSlowHold(hold, holdNanos, false);
+                }
+            }
+        } catch (Exception e) {
+            log.error("扫描分布式锁慢持有异常", e);
+        }
+    }
+
+    private void warnSlowHold(Hold hold, long holdNanos, boolean released) {
+        if (hold.reported.compareAndSet(false, true)) {
+            log.warn("分布式锁持有时间过长，name={}，keys={}，hold={}ms，expire={}ms，released={}", hold.name, hold.keys,
+                    TimeUnit.NANOSECONDS.toMillis(holdNanos), TimeUnit.NANOSECONDS.toMillis(hold.expireNanos), released);
+        }
+    }
+
+    /**
+     * 各锁名称的统计
+     */
+    public Map<String, Object> summary() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("held", held.get());
+        result.put("slowHolds", slowHolds());
+        Map<String, Object> renewals = new LinkedHashMap<>();
+        renewals.put("success", (long) renewalSuccesses.count());
+        renewals.put("failure", (long) renewalFailures.count());
+        result.put("renewals", renewals);
+        Map<String, Object> locks = new LinkedHashMap<>();
+        meters.forEach((name, m) -> {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("held", m.held.get());
+            item.put("acquired", m.hold.count() + m.held.get());
+            item.put("failures", (long) m.failures.count());
+            item.put("waitMeanMs", m.wait.mean(TimeUnit.MILLISECONDS));
+            item.put("waitMaxMs", m.wait.max(TimeUnit.MILLISECONDS));
+            item.put("holdMeanMs", m.hold.mean(TimeUnit.MILLISECONDS));
+            item.put("holdMaxMs", m.hold.max(TimeUnit.MILLISECONDS));
+            locks.put(name, item);
+        });
+        result.put("locks", locks);
+        return result;
+    }
+
+    private Meters meters(String name) {
+        Meters m = meters.get(name);
+        if (m == null) {
+            m = meters.computeIfAbsent(name, Meters::new);
+        }
+        return m;
+    }
+
+    /**
+     * 一次锁持有
+     */
+    public static final class Hold {
+
+        private final String name;
+
+        private final List<String> keys;
+
+        private final long slowNanos;
+
+        private final long expireNanos;
+
+        private final long acquiredAt = System.nanoTime();
+
+        /**
+         * 是否已经报告过慢持有
+         */
+        private final AtomicBoolean reported = new AtomicBoolean();
+
+        private Hold(String name, List<String> keys, long slowNanos, long expireNanos) {
+            this.name = name;
+            this.keys = keys;
+            this.slowNanos = slowNanos;
+            this.expireNanos = expireNanos;
+        }
+    }
+
+    private final class Meters {
+
+        private final Timer wait;
+
+        private final Timer hold;
+
+        private final Counter failures;
+
+        private final AtomicInteger held = new AtomicInteger();
+
+        private Meters(String name) {
+            this.wait = Timer.builder(WAIT).tag("name", name)
+                    .publishPercentileHistogram()
+                    .publishPercentiles(0.5, 0.99)
+                    .register(meterRegistry);
+            this.hold = Timer.builder(HOLD).tag("name", name)
+                    .publishPercentileHistogram()
+                    .publishPercentiles(0.5, 0.99)
+                    .register(meterRegistry);
+            this.failures = Counter.builder(FAILURES).tag("name", name).register(meterRegistry);
+        }
+    }
+}
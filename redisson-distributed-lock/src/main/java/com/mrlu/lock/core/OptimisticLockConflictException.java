@@ -0,0 +1,17 @@
+package com.mrlu.lock.core;
+
+import com.mrlu.exception.ServiceException;
+
+/**
+ * @author 简单de快乐
+ *
+ * 乐观锁更新冲突（版本号不一致，影响行数为0），@OptimisticRetry的方法抛出后会被重试
+ */
+public class OptimisticLockConflictException extends ServiceException {
+
+    private static final long serialVersionUID = 1L;
+
+    public OptimisticLockConflictException(String message) {
+        super(message);
+    }
+}
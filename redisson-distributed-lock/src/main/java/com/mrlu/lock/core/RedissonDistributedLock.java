@@ -1,14 +1,19 @@
 package com.mrlu.lock.core;
 
 import com.mrlu.exception.ServiceException;
+import com.mrlu.lock.constant.LockMode;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.StringUtils;
+import org.redisson.api.RFencedLock;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -22,6 +27,9 @@ public class RedissonDistributedLock implements IDistributedLock {
     @Resource
     private RedissonClient redissonClient;
 
+    @Resource
+    private LeaseRenewalScheduler leaseRenewalScheduler;
+
     /**
      * 统一前缀
      */
@@ -38,10 +46,32 @@ public class RedissonDistributedLock implements IDistributedLock {
         if (StringUtils.isEmpty(key)) {
             throw new ServiceException("lock error, key is null or empty");
         }
-        RLock lock = getLock(key, fair);
+        return lock(getLock(key, fair), lockTime, unit);
+    }
+
+    @Override
+    public RLock lock(List<String> keys, long lockTime, TimeUnit unit, boolean fair, LockMode mode) {
+        return lock(getMultiLock(keys, fair, mode), lockTime, unit);
+    }
+
+    @Override
+    public RLock readLock(String key, long lockTime, TimeUnit unit) {
+        return lock(getLock(key, false, LockMode.READ), lockTime, unit);
+    }
+
+    @Override
+    public RLock writeLock(String key, long lockTime, TimeUnit unit) {
+        return lock(getLock(key, false, LockMode.WRITE), lockTime, unit);
+    }
+
+    private RLock lock(RLock lock, long lockTime, TimeUnit unit) {
         // 获取锁,失败一直等待,直到获取锁,不支持自动续期
         if (lockTime > 0) {
             lock.lock(lockTime, unit);
+        } else if (leaseRenewalScheduler.supports(lock)) {
+            // 由调度器批量续期
+            lock.lock(leaseRenewalScheduler.getLease(), TimeUnit.MILLISECONDS);
+            leaseRenewalScheduler.register(lock);
         } else {
             // 具有Watch Dog 自动延期机制 默认续30s 每隔30/3=10 秒续到30
             lock.lock();
@@ -59,11 +89,44 @@ public class RedissonDistributedLock implements IDistributedLock {
         if (tryTime <= 0) {
             throw new ServiceException("tryTime must be greater than 0");
         }
-        RLock lock = getLock(key, fair);
+        return tryLock(getLock(key, fair), tryTime, lockTime, unit);
+    }
+
+    @Override
+    public RLock tryLock(List<String> keys, long tryTime, long lockTime, TimeUnit unit, boolean fair, LockMode mode) throws Exception {
+        if (tryTime <= 0) {
+            throw new ServiceException("tryTime must be greater than 0");
+        }
+        return tryLock(getMultiLock(keys, fair, mode), tryTime, lockTime, unit);
+    }
+
+    @Override
+    public RLock tryReadLock(String key, long tryTime, long lockTime, TimeUnit unit) throws Exception {
+        if (tryTime <= 0) {
+            throw new ServiceException("tryTime must be greater than 0");
+        }
+        return tryLock(getLock(key, false, LockMode.READ), tryTime, lockTime, unit);
+    }
+
+    @Override
+    public RLock tryWriteLock(String key, long tryTime, long lockTime, TimeUnit unit) throws Exception {
+        if (tryTime <= 0) {
+            throw new ServiceException("tryTime must be greater than 0");
+        }
+        return tryLock(getLock(key, false, LockMode.WRITE), tryTime, lockTime, unit);
+    }
+
+    private RLock tryLock(RLock lock, long tryTime, long lockTime, TimeUnit unit) throws InterruptedException {
         // 尝试获取锁，获取不到超时异常,不支持自动续期
         boolean lockAcquired;
         if (lockTime > 0) {
             lockAcquired = lock.tryLock(tryTime, lockTime, unit);
+        } else if (leaseRenewalScheduler.supports(lock)) {
+            // 由调度器批量续期
+            lockAcquired = lock.tryLock(unit.toMillis(tryTime), leaseRenewalScheduler.getLease(), TimeUnit.MILLISECONDS);
+            if (lockAcquired) {
+                leaseRenewalScheduler.register(lock);
+            }
         } else {
             // 具有Watch Dog 自动延期机制 默认续30s 每隔30/3=10 秒续到30s
             lockAcquired = lock.tryLock(tryTime, unit);
@@ -74,6 +137,51 @@ public class RedissonDistributedLock implements IDistributedLock {
         return null;
     }
 
+    @Override
+    public FencedLock fencedLock(String key, long lockTime, TimeUnit unit) {
+        RFencedLock lock = getFencedLock(key);
+        Long token;
+        if (lockTime > 0) {
+            token = lock.lockAndGetToken(lockTime, unit);
+        } else if (leaseRenewalScheduler.supports(lock)) {
+            token = lock.lockAndGetToken(leaseRenewalScheduler.getLease(), TimeUnit.MILLISECONDS);
+            leaseRenewalScheduler.register(lock);
+        } else {
+            token = lock.lockAndGetToken();
+        }
+        return new FencedLock(lock, token);
+    }
+
+    @Override
+    public FencedLock tryFencedLock(String key, long tryTime, long lockTime, TimeUnit unit) throws Exception {
+        if (tryTime <= 0) {
+            throw new ServiceException("tryTime must be greater than 0");
+        }
+        RFencedLock lock = getFencedLock(key);
+        Long token;
+        if (lockTime > 0) {
+            token = lock.tryLockAndGetToken(tryTime, lockTime, unit);
+        } else if (leaseRenewalScheduler.supports(lock)) {
+            token = lock.tryLockAndGetToken(unit.toMillis(tryTime), leaseRenewalScheduler.getLease(), TimeUnit.MILLISECONDS);
+            if (token != null) {
+                leaseRenewalScheduler.register(lock);
+            }
+        } else {
+            token = lock.tryLockAndGetToken(tryTime, unit);
+        }
+        return token == null ? null : new FencedLock(lock, token);
+    }
+
+    /**
+     * 获取fencing锁，token保存在{锁名}:token中，每次加锁成功递增
+     */
+    private RFencedLock getFencedLock(String key) {
+        if (StringUtils.isEmpty(key)) {
+            throw new ServiceException("lock error, key is null or empty");
+        }
+        return redissonClient.getFencedLock(prefix + key);
+    }
+
     /**
      * 获取锁
      * @param key 加锁的key
@@ -93,17 +201,102 @@ public class RedissonDistributedLock implements IDistributedLock {
         return lock;
     }
 
+    /**
+     * 按加锁模式获取锁
+     * @param key 加锁的key
+     * @param fair 是否公平锁，仅EXCLUSIVE模式有效
+     * @param mode 加锁模式，READ/WRITE基于同一个RReadWriteLock
+     * @return
+     */
+    private RLock getLock(String key, boolean fair, LockMode mode) {
+        if (StringUtils.isEmpty(key)) {
+            throw new ServiceException("lock error, key is null or empty");
+        }
+        switch (mode) {
+            case READ:
+                return redissonClient.getReadWriteLock(prefix + key).readLock();
+            case WRITE:
+                return redissonClient.getReadWriteLock(prefix + key).writeLock();
+            default:
+                return getLock(key, fair);
+        }
+    }
+
+    /**
+     * 单个key时获取普通锁，多个key时获取联锁
+     */
+    private RLock getLock(List<String> keys, boolean fair, LockMode mode) {
+        if (keys != null && keys.size() == 1) {
+            return getLock(keys.get(0), fair, mode);
+        }
+        return getMultiLock(keys, fair, mode);
+    }
+
+    /**
+     * 获取联锁，所有key都加锁成功才算成功，失败时已获取的锁会被释放
+     * @param keys 加锁的key，调用方需保证顺序一致
+     * @param fair true: 获取公布锁 false: 获取非公布锁
+     * @param mode 加锁模式
+     * @return
+     */
+    private RLock getMultiLock(List<String> keys, boolean fair, LockMode mode) {
+        if (keys == null || keys.isEmpty()) {
+            throw new ServiceException("lock error, keys is null or empty");
+        }
+        RLock[] locks = new RLock[keys.size()];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = getLock(keys.get(i), fair, mode);
+        }
+        return redissonClient.getMultiLock(locks);
+    }
+
     @Override
     public void unlock(RLock lock) {
-        if (lock != null) {
-            if (lock.isLocked()) {
-                try {
-                    lock.unlock();
-                } catch (IllegalMonitorStateException e) {
-                    log.error("释放分布式锁异常", e);
-                    throw new ServiceException(e);
-                }
+        if (lock == null) {
+            return;
+        }
+        if (leaseRenewalScheduler.supports(lock)) {
+            leaseRenewalScheduler.unregister(lock);
+        }
+        // 联锁会先对所有key发出释放命令再等待结果，部分key已过期时其余key仍会被释放，
+        // 之后抛出（包装在CompletionException中的）IllegalMonitorStateException，与单锁统一按租约过期处理
+        try {
+            lock.unlock();
+        } catch (RuntimeException e) {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (!(cause instanceof IllegalMonitorStateException)) {
+                throw e;
             }
+            log.error("释放分布式锁异常，锁已过期或被其他线程持有", cause);
+            throw new ServiceException((IllegalMonitorStateException) cause);
+        }
+    }
+
+    @Override
+    public CompletableFuture<RLock> lockAsync(List<String> keys, long lockTime, TimeUnit unit, boolean fair, LockMode mode, long lockId) {
+        RLock lock = getLock(keys, fair, mode);
+        // lockTime小于等于0时传-1，具有Watch Dog 自动延期机制
+        return lock.lockAsync(lockTime > 0 ? lockTime : -1, unit, lockId)
+                .toCompletableFuture()
+                .thenApply(v -> lock);
+    }
+
+    @Override
+    public CompletableFuture<RLock> tryLockAsync(List<String> keys, long tryTime, long lockTime, TimeUnit unit, boolean fair, LockMode mode, long lockId) {
+        if (tryTime <= 0) {
+            throw new ServiceException("tryTime must be greater than 0");
+        }
+        RLock lock = getLock(keys, fair, mode);
+        return lock.tryLockAsync(tryTime, lockTime > 0 ? lockTime : -1, unit, lockId)
+                .toCompletableFuture()
+                .thenApply(acquired -> acquired ? lock : null);
+    }
+
+    @Override
+    public CompletableFuture<Void> unlockAsync(RLock lock, long lockId) {
+        if (lock == null) {
+            return CompletableFuture.completedFuture(null);
         }
+        return lock.unlockAsync(lockId).toCompletableFuture();
     }
 }
@@ -0,0 +1,35 @@
+package com.mrlu.lock.endpoint;
+
+import com.mrlu.lock.core.LeaseRenewalScheduler;
+import com.mrlu.lock.core.LockMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * @author 简单de快乐
+ *
+ * 分布式锁监控端点：/actuator/lock
+ * 耗时直方图同时注册到了MeterRegistry，也可以通过/actuator/metrics/lock.wait查看
+ */
+@Component
+@Endpoint(id = "lock")
+public class LockEndpoint {
+
+    @Autowired
+    private LockMetrics lockMetrics;
+
+    @Autowired
+    private LeaseRenewalScheduler leaseRenewalScheduler;
+
+    @ReadOperation
+    public Map<String, Object> lock() {
+        Map<String, Object> result = lockMetrics.summary();
+        result.put("batchRenewing", leaseRenewalScheduler.size());
+        result.put("batchRenewalTickMs", leaseRenewalScheduler.nextTick());
+        return result;
+    }
+}
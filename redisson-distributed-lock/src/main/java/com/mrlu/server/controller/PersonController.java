@@ -2,6 +2,8 @@ package com.mrlu.server.controller;
 
 
 import com.mrlu.lock.anno.DistributedLock;
+import com.mrlu.lock.anno.OptimisticRetry;
+import com.mrlu.lock.constant.LockMode;
 import com.mrlu.response.CommonResults;
 import com.mrlu.server.entity.Person;
 import com.mrlu.server.service.PersonService;
@@ -12,6 +14,8 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.concurrent.CompletableFuture;
+
 
 @RestController
 @RequestMapping("/person")
@@ -24,13 +28,29 @@ public class PersonController {
     private PersonService personService;
 
     @GetMapping("/add-age")
-    @DistributedLock(key = "#id", keyPrefix = "person-animal-add-age", lockTime = 60)
+    @OptimisticRetry
+    @DistributedLock(key = "{'person-' + #id, 'animal-' + #id}", keyPrefix = "add-age-", lockTime = 60)
     public CommonResults<Boolean> testAddAge(Integer id) {
         return CommonResults.ok(personService.testAddAge(id));
     }
 
+    /**
+     * 与/add-age加同样的锁，等锁期间不占用请求线程
+     */
+    @GetMapping("/add-age-async")
+    @DistributedLock(key = "{'person-' + #id, 'animal-' + #id}", keyPrefix = "add-age-", tryLock = true, tryTime = 10, lockTime = 60)
+    public CompletableFuture<CommonResults<Boolean>> testAddAgeAsync(Integer id) {
+        return CompletableFuture.supplyAsync(() -> CommonResults.ok(personService.testAddAge(id)));
+    }
+
+    @GetMapping("/get")
+    @DistributedLock(key = "#id", keyPrefix = "person-", mode = LockMode.READ, lockTime = 60)
+    public CommonResults<Person> getPerson(Integer id) {
+        return CommonResults.ok(personService.getById(id));
+    }
+
     @PostMapping("/person/add-age")
-    @DistributedLock(key = "#person.name + '-' + #person.id", keyPrefix = "person-add-age", lockTime = 60)
+    @DistributedLock(key = "#person.name + '-' + #person.id", keyPrefix = "person-add-age", lockTime = 60, localLock = true)
     public CommonResults<Boolean> testLockByIdAndName(Person person) {
         return CommonResults.ok(personService.testLockByIdAndName(person));
     }
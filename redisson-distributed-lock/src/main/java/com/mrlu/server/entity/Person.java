@@ -3,6 +3,7 @@ package com.mrlu.server.entity;
 import com.baomidou.mybatisplus.annotation.IdType;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
+import com.baomidou.mybatisplus.annotation.Version;
 import lombok.Data;
 import lombok.ToString;
 import lombok.experimental.Accessors;
@@ -24,5 +25,11 @@ public class Person implements Serializable {
 
     private Integer age;
 
+    /**
+     * 乐观锁版本号，已有的表需要执行：alter table t_person add column version int not null default 0
+     */
+    @Version
+    private Integer version;
+
 }
 
@@ -1,6 +1,7 @@
 package com.mrlu.server.service.impl;
 
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.mrlu.lock.core.OptimisticLockConflictException;
 import com.mrlu.server.entity.Animal;
 import com.mrlu.server.mapper.AnimalMapper;
 import com.mrlu.server.service.AnimalService;
@@ -30,6 +31,10 @@ public class AnimalServiceImpl extends ServiceImpl<AnimalMapper, Animal> impleme
         Animal animal = getById(id);
         Integer age = animal.getAge();
         animal.setAge(++age);
-        return updateById(animal);
+        // 版本号不一致时影响行数为0，抛出冲突异常回滚整个事务，由外层重试
+        if (!updateById(animal)) {
+            throw new OptimisticLockConflictException("animal version conflict, id=" + id);
+        }
+        return true;
     }
 }
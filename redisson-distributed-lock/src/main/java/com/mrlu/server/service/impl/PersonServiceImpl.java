@@ -1,6 +1,7 @@
 package com.mrlu.server.service.impl;
 
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.mrlu.lock.core.OptimisticLockConflictException;
 import com.mrlu.server.entity.Person;
 import com.mrlu.server.mapper.PersonMapper;
 import com.mrlu.server.service.AnimalService;
@@ -33,7 +34,9 @@ public class PersonServiceImpl extends ServiceImpl<PersonMapper, Person> impleme
         Person person = getById(id);
         Integer age = person.getAge();
         person.setAge(++age);
-        updateById(person);
+        if (!updateById(person)) {
+            throw new OptimisticLockConflictException("person version conflict, id=" + id);
+        }
         //int i = 1/0;
         return animalService.testAddAge(id);
     }
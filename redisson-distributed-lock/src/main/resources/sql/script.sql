@@ -1,10 +1,12 @@
 create table t_person(
                          id int primary key auto_increment,
                          name varchar(100),
-                         age int
+                         age int,
+                         version int not null default 0
 );
 create table t_animal(
                          id int primary key auto_increment,
                          name varchar(100),
-                         age int
+                         age int,
+                         version int not null default 0
 );
\ No newline at end of file
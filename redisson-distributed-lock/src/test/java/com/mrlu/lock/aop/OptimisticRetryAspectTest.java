@@ -0,0 +1,120 @@
+package com.mrlu.lock.aop;
+
+import com.mrlu.exception.ServiceException;
+import com.mrlu.lock.anno.OptimisticRetry;
+import com.mrlu.lock.core.OptimisticLockConflictException;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Method;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author 简单de快乐
+ *
+ * 乐观锁冲突重试
+ */
+class OptimisticRetryAspectTest {
+
+    private OptimisticRetryAspect aspect;
+
+    private ProceedingJoinPoint point;
+
+    @OptimisticRetry(maxAttempts = 3, backoff = 1, maxBackoff = 2)
+    public void update() {
+    }
+
+    @OptimisticRetry(maxAttempts = 0)
+    public void updateOnce() {
+    }
+
+    @OptimisticRetry(backoff = 10, maxBackoff = 200)
+    public void updateWithDefaults() {
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        aspect = new OptimisticRetryAspect();
+        point = joinPoint("update");
+    }
+
+    private static ProceedingJoinPoint joinPoint(String methodName) throws NoSuchMethodException {
+        Method method = OptimisticRetryAspectTest.class.getMethod(methodName);
+        MethodSignature signature = mock(MethodSignature.class);
+        when(signature.getMethod()).thenReturn(method);
+        when(signature.toShortString()).thenReturn(methodName);
+        ProceedingJoinPoint point = mock(ProceedingJoinPoint.class);
+        when(point.getSignature()).thenReturn(signature);
+        return point;
+    }
+
+    private static OptimisticLockConflictException conflict() {
+        return new OptimisticLockConflictException("version conflict");
+    }
+
+    @Test
+    void retriesOnConflict() throws Throwable {
+        when(point.proceed()).thenThrow(conflict()).thenThrow(conflict()).thenReturn("ok");
+
+        assertEquals("ok", aspect.around(point));
+        verify(point, times(3)).proceed();
+    }
+
+    @Test
+    void conflictWrappedByLockAspectIsRetried() throws Throwable {
+        when(point.proceed()).thenThrow(new ServiceException(new RuntimeException(conflict()))).thenReturn("ok");
+
+        assertEquals("ok", aspect.around(point));
+        verify(point, times(2)).proceed();
+    }
+
+    @Test
+    void stopsAtMaxAttempts() throws Throwable {
+        OptimisticLockConflictException last = conflict();
+        when(point.proceed()).thenThrow(conflict()).thenThrow(conflict()).thenThrow(last);
+
+        assertSame(last, assertThrows(OptimisticLockConflictException.class, () -> aspect.around(point)));
+        verify(point, times(3)).proceed();
+    }
+
+    @Test
+    void nonPositiveMaxAttemptsStillCallsOnce() throws Throwable {
+        ProceedingJoinPoint once = joinPoint("updateOnce");
+        when(once.proceed()).thenThrow(conflict());
+
+        assertThrows(OptimisticLockConflictException.class, () -> aspect.around(once));
+        verify(once).proceed();
+    }
+
+    @Test
+    void otherErrorsAreNotRetried() throws Throwable {
+        IllegalStateException error = new IllegalStateException("db down");
+        when(point.proceed()).thenThrow(error);
+
+        assertSame(error, assertThrows(IllegalStateException.class, () -> aspect.around(point)));
+        verify(point).proceed();
+    }
+
+    @Test
+    void backoffStaysWithinBounds() throws Exception {
+        OptimisticRetry retry = OptimisticRetryAspectTest.class.getMethod("updateWithDefaults").getAnnotation(OptimisticRetry.class);
+        for (int attempt = 1; attempt <= 64; attempt++) {
+            long expected = Math.min(200, 10L << Math.min(attempt - 1, 30));
+            for (int i = 0; i < 100; i++) {
+                long backoff = ReflectionTestUtils.invokeMethod(aspect, "backoff", retry, attempt);
+                assertTrue(backoff >= expected / 2 && backoff <= expected, "attempt=" + attempt + ", backoff=" + backoff);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.mrlu.lock.core;
+
+import com.baomidou.mybatisplus.annotation.TableName;
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.mrlu.exception.ServiceException;
+import lombok.Data;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author 简单de快乐
+ *
+ * fencing条件：fence_token <= token，并把fence_token更新为token
+ */
+class FencingUpdateWrappersTest {
+
+    @Data
+    @TableName("t_fenced_row")
+    public static class FencedRow {
+
+        private Integer id;
+
+        private Integer age;
+
+        private Long fenceToken;
+    }
+
+    @BeforeAll
+    static void initTableInfo() {
+        TableInfoHelper.initTableInfo(new MapperBuilderAssistant(new MybatisConfiguration(), ""), FencedRow.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        FencingTokenHolder.restore(null);
+    }
+
+    @Test
+    void guardAppendsConditionAndSet() {
+        FencingTokenHolder.set(42L);
+        UpdateWrapper<FencedRow> wrapper = FencingUpdateWrappers.guard(new UpdateWrapper<FencedRow>().eq("id", 1).set("age", 18));
+
+        assertGuarded(wrapper.getSqlSegment(), wrapper.getSqlSet(), wrapper.getParamNameValuePairs(), "fence_token", 42L);
+        assertTrue(wrapper.getSqlSegment().startsWith("(id = "));
+        assertTrue(wrapper.getSqlSet().startsWith("age="));
+    }
+
+    @Test
+    void guardWithCustomColumn() {
+        FencingTokenHolder.set(7L);
+        UpdateWrapper<FencedRow> wrapper = FencingUpdateWrappers.guard(new UpdateWrapper<FencedRow>().eq("id", 1), "token");
+
+        assertGuarded(wrapper.getSqlSegment(), wrapper.getSqlSet(), wrapper.getParamNameValuePairs(), "token", 7L);
+    }
+
+    @Test
+    void lambdaGuard() {
+        FencingTokenHolder.set(9L);
+        LambdaUpdateWrapper<FencedRow> wrapper = FencingUpdateWrappers.guard(
+                new LambdaUpdateWrapper<FencedRow>().eq(FencedRow::getId, 1), FencedRow::getFenceToken);
+
+        assertGuarded(wrapper.getSqlSegment(), wrapper.getSqlSet(), wrapper.getParamNameValuePairs(), "fence_token", 9L);
+    }
+
+    @Test
+    void guardOutsideFencingLockIsRejected() {
+        assertThrows(ServiceException.class, () -> FencingUpdateWrappers.guard(new UpdateWrapper<FencedRow>().eq("id", 1)));
+    }
+
+    /**
+     * 占位符编号由MyBatis-Plus在生成sql时分配，这里从sql中取出参数名再校验参数值
+     */
+    private static void assertGuarded(String where, String set, Map<String, Object> params, String column, long token) {
+        Matcher condition = Pattern.compile(column + " <= #\\{ew\\.paramNameValuePairs\\.(\\w+)}\\)$").matcher(where);
+        assertTrue(condition.find(), where);
+        assertEquals(token, params.get(condition.group(1)));
+
+        Matcher assignment = Pattern.compile(column + "=#\\{ew\\.paramNameValuePairs\\.(\\w+)}$").matcher(set);
+        assertTrue(assignment.find(), set);
+        assertEquals(token, params.get(assignment.group(1)));
+    }
+}
@@ -0,0 +1,221 @@
+package com.mrlu.lock.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RLock;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author 简单de快乐
+ *
+ * 批量续期的tick间隔、按slot分组和失败处理
+ */
+class LeaseRenewalSchedulerTest {
+
+    private static final long LEASE = 30000;
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    private LeaseRenewalScheduler scheduler;
+
+    private LockMetrics lockMetrics;
+
+    /**
+     * 每次脚本调用的key
+     */
+    private final List<List<Object>> calls = new ArrayList<>();
+
+    /**
+     * 续期失败的锁名
+     */
+    private final Set<String> expired = new HashSet<>();
+
+    /**
+     * 包含该锁名的批次调用时抛出异常
+     */
+    private String failingKey;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        RScript script = mock(RScript.class, invocation -> {
+            if (!"eval".equals(invocation.getMethod().getName())) {
+                return null;
+            }
+            List<Object> keys = new ArrayList<>((List<Object>) invocation.getArguments()[3]);
+            calls.add(keys);
+            if (keys.contains(failingKey)) {
+                throw new IllegalStateException("CROSSSLOT");
+            }
+            List<Long> result = new ArrayList<>();
+            for (Object key : keys) {
+                result.add(expired.contains(key) ? 0L : 1L);
+            }
+            return result;
+        });
+        RedissonClient redissonClient = mock(RedissonClient.class);
+        when(redissonClient.getId()).thenReturn("client");
+        when(redissonClient.getScript(any())).thenReturn(script);
+        lockMetrics = mock(LockMetrics.class);
+
+        // 测试中slot取锁名的首字母
+        scheduler = new LeaseRenewalScheduler() {
+            @Override
+            int slot(String name) {
+                return name.charAt(0);
+            }
+        };
+        ReflectionTestUtils.setField(scheduler, "redissonClient", redissonClient);
+        ReflectionTestUtils.setField(scheduler, "lockMetrics", lockMetrics);
+        ReflectionTestUtils.setField(scheduler, "enabled", true);
+        ReflectionTestUtils.setField(scheduler, "lease", LEASE);
+        ReflectionTestUtils.setField(scheduler, "batchSize", 2);
+        ReflectionTestUtils.setField(scheduler, "clock", (LongSupplier) now::get);
+    }
+
+    private static RLock lock(String name) {
+        RLock lock = mock(RLock.class);
+        when(lock.getName()).thenReturn(name);
+        return lock;
+    }
+
+    private void hold(long millis) {
+        RLock lock = lock("hold");
+        scheduler.register(lock);
+        now.addAndGet(millis);
+        scheduler.unregister(lock);
+    }
+
+    private void renew() {
+        ReflectionTestUtils.invokeMethod(scheduler, "renew");
+    }
+
+    /**
+     * 时间推进到刚登记的锁剩余时间不足lease/3
+     */
+    private void advanceUntilDue() {
+        now.addAndGet(LEASE - LEASE / 3 + 1);
+    }
+
+    @Test
+    void tickIsClampedBetweenLeaseDividedBy20And6() {
+        // 没有样本时取上限
+        assertEquals(LEASE / 6, scheduler.nextTick());
+        hold(10);
+        assertEquals(LEASE / 20, scheduler.nextTick());
+        for (int i = 0; i < 50; i++) {
+            hold(6000);
+        }
+        assertEquals(3000, scheduler.nextTick(), 10);
+        for (int i = 0; i < 50; i++) {
+            hold(10 * LEASE);
+        }
+        assertEquals(LEASE / 6, scheduler.nextTick());
+    }
+
+    @Test
+    void reentrantLockIsSampledOnlyOnFinalUnregister() {
+        RLock lock = lock("a");
+        scheduler.register(lock);
+        scheduler.register(lock);
+        now.addAndGet(100);
+        scheduler.unregister(lock);
+        assertEquals(1, scheduler.size());
+        assertEquals(LEASE / 6, scheduler.nextTick());
+        now.addAndGet(100);
+        scheduler.unregister(lock);
+        assertEquals(0, scheduler.size());
+        assertEquals(LEASE / 20, scheduler.nextTick());
+    }
+
+    @Test
+    void onlyDueLeasesAreRenewed() {
+        scheduler.register(lock("a1"));
+        renew();
+        assertTrue(calls.isEmpty());
+        advanceUntilDue();
+        renew();
+        assertEquals(1, calls.size());
+        // 续期后到期时间顺延，下次不再续期
+        renew();
+        assertEquals(1, calls.size());
+    }
+
+    @Test
+    void batchesAreGroupedBySlot() {
+        for (String name : new String[]{"a1", "a2", "a3", "b1", "b2", "c1"}) {
+            scheduler.register(lock(name));
+        }
+        advanceUntilDue();
+        renew();
+
+        // a: 2 + 1，b: 2，c: 1
+        assertEquals(4, calls.size());
+        for (List<Object> keys : calls) {
+            assertTrue(keys.size() <= 2);
+            char slot = keys.get(0).toString().charAt(0);
+            for (Object key : keys) {
+                assertEquals(slot, key.toString().charAt(0));
+            }
+        }
+        verify(lockMetrics, times(2)).recordRenewal(2, 0);
+        verify(lockMetrics, times(2)).recordRenewal(1, 0);
+    }
+
+    @Test
+    void failingBatchDoesNotAffectOthers() {
+        for (String name : new String[]{"a1", "a2", "b1", "c1"}) {
+            scheduler.register(lock(name));
+        }
+        failingKey = "b1";
+        advanceUntilDue();
+        renew();
+
+        assertEquals(3, calls.size());
+        verify(lockMetrics).recordRenewal(0, 1);
+        verify(lockMetrics).recordRenewal(2, 0);
+        verify(lockMetrics).recordRenewal(1, 0);
+        // 失败的批次仍然登记着，下个tick再次尝试，成功的批次已顺延
+        assertEquals(4, scheduler.size());
+        calls.clear();
+        failingKey = null;
+        renew();
+        assertEquals(1, calls.size());
+        assertEquals("b1", calls.get(0).get(0));
+    }
+
+    @Test
+    void leasesThatFailToRenewAreRemoved() {
+        scheduler.register(lock("a1"));
+        scheduler.register(lock("a2"));
+        expired.add("a2");
+        advanceUntilDue();
+        renew();
+
+        assertEquals(1, scheduler.size());
+        verify(lockMetrics).recordRenewal(1, 1);
+        calls.clear();
+        advanceUntilDue();
+        renew();
+        assertEquals(1, calls.size());
+        assertEquals(1, calls.get(0).size());
+        assertEquals("a1", calls.get(0).get(0));
+    }
+}
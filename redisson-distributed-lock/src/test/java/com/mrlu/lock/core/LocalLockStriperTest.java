@@ -0,0 +1,120 @@
+package com.mrlu.lock.core;
+
+import com.mrlu.lock.constant.LockMode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author 简单de快乐
+ *
+ * 本地分段锁的等待和加锁顺序
+ */
+class LocalLockStriperTest {
+
+    private LocalLockStriper striper;
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        striper = new LocalLockStriper(1024);
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void nonPositiveTryTimeBlocksUntilReleased() throws Exception {
+        List<Lock> held = striper.lock(Arrays.asList("a"), LockMode.EXCLUSIVE, 0, TimeUnit.SECONDS);
+        Future<List<Lock>> waiter = executor.submit(() -> {
+            List<Lock> locks = striper.lock(Arrays.asList("a"), LockMode.EXCLUSIVE, 0, TimeUnit.SECONDS);
+            striper.unlock(locks);
+            return locks;
+        });
+        assertThrows(TimeoutException.class, () -> waiter.get(200, TimeUnit.MILLISECONDS));
+        striper.unlock(held);
+        assertNotNull(waiter.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void tryTimeoutReleasesAcquiredStripes() throws Exception {
+        List<String> keys = Arrays.asList("a", "b");
+        // 另一个线程先持有其中一个key，加锁和解锁必须在同一个线程
+        ExecutorService holder = Executors.newSingleThreadExecutor();
+        List<Lock> held = holder.submit(() -> striper.lock(Arrays.asList("b"), LockMode.EXCLUSIVE, 0, TimeUnit.SECONDS)).get();
+
+        assertNull(striper.lock(keys, LockMode.EXCLUSIVE, 50, TimeUnit.MILLISECONDS));
+
+        // 超时后已获取的分段已释放，其他线程可以获取
+        assertTrue(executor.submit(() -> {
+            List<Lock> locks = striper.lock(Arrays.asList("a"), LockMode.EXCLUSIVE, 50, TimeUnit.MILLISECONDS);
+            striper.unlock(locks);
+            return locks != null;
+        }).get());
+        holder.submit(() -> striper.unlock(held)).get();
+        holder.shutdown();
+    }
+
+    @Test
+    void bulkGetOrderDoesNotDependOnKeyOrder() throws Exception {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            keys.add("key-" + i);
+        }
+        List<String> reversed = new ArrayList<>(keys);
+        Collections.reverse(reversed);
+
+        List<Lock> forward = striper.lock(keys, LockMode.EXCLUSIVE, 0, TimeUnit.SECONDS);
+        striper.unlock(forward);
+        List<Lock> backward = striper.lock(reversed, LockMode.EXCLUSIVE, 0, TimeUnit.SECONDS);
+        striper.unlock(backward);
+        assertEquals(forward, backward);
+
+        // 两个线程以相反的顺序反复对同一组key加锁，按分段顺序加锁不会死锁
+        Future<?> f1 = executor.submit(() -> lockRepeatedly(keys));
+        Future<?> f2 = executor.submit(() -> lockRepeatedly(reversed));
+        f1.get(10, TimeUnit.SECONDS);
+        f2.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void readLocksAreShared() throws Exception {
+        List<Lock> read = striper.lock(Arrays.asList("a"), LockMode.READ, 0, TimeUnit.SECONDS);
+        assertTrue(executor.submit(() -> {
+            List<Lock> locks = striper.lock(Arrays.asList("a"), LockMode.READ, 50, TimeUnit.MILLISECONDS);
+            striper.unlock(locks);
+            return locks != null;
+        }).get());
+        assertFalse(executor.submit(() -> striper.lock(Arrays.asList("a"), LockMode.WRITE, 50, TimeUnit.MILLISECONDS) != null).get());
+        striper.unlock(read);
+    }
+
+    private Void lockRepeatedly(List<String> keys) throws InterruptedException {
+        for (int i = 0; i < 2000; i++) {
+            striper.unlock(striper.lock(keys, LockMode.EXCLUSIVE, 0, TimeUnit.SECONDS));
+        }
+        return null;
+    }
+}
@@ -0,0 +1,146 @@
+package com.mrlu.lock.core;
+
+import com.mrlu.exception.ServiceException;
+import com.mrlu.lock.anno.DistributedLock;
+import com.mrlu.lock.constant.LockMode;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author 简单de快乐
+ *
+ * 锁key的解析和注解校验
+ */
+class LockMetadataTest {
+
+    @DistributedLock(key = "static", keyPrefix = "p-")
+    public void staticKey(String id) {
+    }
+
+    @DistributedLock(key = "#id + '-' + #p1 + '-' + #a1", keyPrefix = "p-")
+    public void byNameAndIndex(String id, Integer age) {
+    }
+
+    @DistributedLock(key = "#ids", keyPrefix = "p-")
+    public void byCollection(List<String> ids) {
+    }
+
+    @DistributedLock(key = "#ids", keyPrefix = "p-")
+    public void byArray(String[] ids) {
+    }
+
+    @DistributedLock(key = "{'person-' + #id, 'animal-' + #id}", keyPrefix = "add-age-")
+    public void byInlineList(Integer id) {
+    }
+
+    @DistributedLock(key = "#id", fencing = true)
+    public void fencing(String id) {
+    }
+
+    @DistributedLock(key = "#id", fencing = true, mode = LockMode.READ)
+    public void fencingRead(String id) {
+    }
+
+    @DistributedLock(key = "#id", fencing = true, fair = true)
+    public void fencingFair(String id) {
+    }
+
+    @DistributedLock(key = "#id", fencing = true)
+    public CompletableFuture<Void> fencingAsync(String id) {
+        return null;
+    }
+
+    @DistributedLock(key = "#id", localLock = true)
+    public CompletableFuture<Void> localLockAsync(String id) {
+        return null;
+    }
+
+    @DistributedLock(key = "#id")
+    public CompletableFuture<Void> async(String id) {
+        return null;
+    }
+
+    @DistributedLock(key = "#id")
+    public void noArgs() {
+    }
+
+    @DistributedLock(key = " ")
+    public void blankKey() {
+    }
+
+    private static LockMetadata metadata(String name) {
+        for (Method method : LockMetadataTest.class.getMethods()) {
+            if (method.getName().equals(name)) {
+                return new LockMetadata(method, method.getAnnotation(DistributedLock.class));
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    @Test
+    void staticKeyIsPrefixed() {
+        assertEquals(Collections.singletonList("p-static"), metadata("staticKey").lockKeys(new Object[]{"1"}));
+    }
+
+    @Test
+    void variablesByNameAndIndex() {
+        assertEquals(Collections.singletonList("p-1-18-18"), metadata("byNameAndIndex").lockKeys(new Object[]{"1", 18}));
+    }
+
+    @Test
+    void collectionKeysAreSortedAndDeduplicated() {
+        LockMetadata metadata = metadata("byCollection");
+        assertEquals(Arrays.asList("p-a", "p-b", "p-c"), metadata.lockKeys(new Object[]{Arrays.asList("c", "a", "b", "a")}));
+    }
+
+    @Test
+    void arrayKeysAreSortedAndDeduplicated() {
+        LockMetadata metadata = metadata("byArray");
+        assertEquals(Arrays.asList("p-x", "p-y"), metadata.lockKeys(new Object[]{new String[]{"y", "x", "y"}}));
+    }
+
+    @Test
+    void inlineListKeys() {
+        assertEquals(Arrays.asList("add-age-animal-7", "add-age-person-7"), metadata("byInlineList").lockKeys(new Object[]{7}));
+    }
+
+    @Test
+    void emptyOrNullKeysAreRejected() {
+        LockMetadata metadata = metadata("byCollection");
+        assertThrows(ServiceException.class, () -> metadata.lockKeys(new Object[]{Collections.emptyList()}));
+        assertThrows(NullPointerException.class, () -> metadata.lockKeys(new Object[]{Arrays.asList("a", null)}));
+        assertThrows(NullPointerException.class, () -> metadata.lockKeys(new Object[]{null}));
+    }
+
+    @Test
+    void fencingOnlyOnSynchronousExclusiveNonFairLock() {
+        assertTrue(metadata("fencing").isFencing());
+        assertThrows(ServiceException.class, () -> metadata("fencingRead"));
+        assertThrows(ServiceException.class, () -> metadata("fencingFair"));
+        assertThrows(ServiceException.class, () -> metadata("fencingAsync"));
+    }
+
+    @Test
+    void localLockIsRejectedOnAsynchronousMethod() {
+        assertThrows(ServiceException.class, () -> metadata("localLockAsync"));
+        LockMetadata metadata = metadata("async");
+        assertTrue(metadata.isAsync());
+        assertFalse(metadata.isLocalLock());
+    }
+
+    @Test
+    void invalidKeysAreRejected() {
+        assertThrows(ServiceException.class, () -> metadata("noArgs"));
+        assertThrows(ServiceException.class, () -> metadata("blankKey"));
+    }
+}
@@ -0,0 +1,51 @@
+package com.mrlu.lock.core;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author 简单de快乐
+ *
+ * 续期结果的统计
+ */
+class LockMetricsTest {
+
+    private MeterRegistry meterRegistry;
+
+    private LockMetrics lockMetrics;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        lockMetrics = new LockMetrics();
+        ReflectionTestUtils.setField(lockMetrics, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(lockMetrics, "slowHoldScanInterval", 1000L);
+        lockMetrics.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        lockMetrics.destroy();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void renewalsAreCountedByOutcome() {
+        lockMetrics.recordRenewal(3, 1);
+        lockMetrics.recordRenewal(0, 2);
+
+        assertEquals(3.0, meterRegistry.get("lock.renewals").tag("outcome", "success").counter().count());
+        assertEquals(3.0, meterRegistry.get("lock.renewals").tag("outcome", "failure").counter().count());
+        Map<String, Object> renewals = (Map<String, Object>) lockMetrics.summary().get("renewals");
+        assertEquals(3L, renewals.get("success"));
+        assertEquals(3L, renewals.get("failure"));
+    }
+}
@@ -0,0 +1,82 @@
+package com.mrlu.lock.core;
+
+import com.mrlu.exception.ServiceException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.redisson.RedissonMultiLock;
+import org.redisson.api.RLock;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author 简单de快乐
+ *
+ * 单锁和联锁在租约过期时的解锁规则一致
+ */
+class RedissonDistributedLockTest {
+
+    private RedissonDistributedLock distributedLock;
+
+    private LeaseRenewalScheduler leaseRenewalScheduler;
+
+    @BeforeEach
+    void setUp() {
+        distributedLock = new RedissonDistributedLock();
+        leaseRenewalScheduler = mock(LeaseRenewalScheduler.class);
+        ReflectionTestUtils.setField(distributedLock, "leaseRenewalScheduler", leaseRenewalScheduler);
+    }
+
+    @Test
+    void multiLockWithExpiredLeaseIsReported() {
+        RedissonMultiLock lock = mock(RedissonMultiLock.class);
+        IllegalMonitorStateException expired = new IllegalMonitorStateException("attempt to unlock lock, not locked by current thread");
+        doThrow(new CompletionException(expired)).when(lock).unlock();
+
+        ServiceException e = assertThrows(ServiceException.class, () -> distributedLock.unlock(lock));
+        assertSame(expired, e.getCause());
+        verify(lock).unlock();
+    }
+
+    @Test
+    void singleLockWithExpiredLeaseIsReported() {
+        RLock lock = mock(RLock.class);
+        IllegalMonitorStateException expired = new IllegalMonitorStateException("attempt to unlock lock, not locked by current thread");
+        doThrow(expired).when(lock).unlock();
+
+        ServiceException e = assertThrows(ServiceException.class, () -> distributedLock.unlock(lock));
+        assertSame(expired, e.getCause());
+    }
+
+    @Test
+    void otherUnlockErrorsAreRethrown() {
+        RedissonMultiLock lock = mock(RedissonMultiLock.class);
+        CompletionException timeout = new CompletionException(new IllegalStateException("timeout"));
+        doThrow(timeout).when(lock).unlock();
+
+        assertSame(timeout, assertThrows(CompletionException.class, () -> distributedLock.unlock(lock)));
+    }
+
+    @Test
+    void batchRenewedLockIsUnregisteredBeforeUnlock() {
+        RLock lock = mock(RLock.class);
+        when(leaseRenewalScheduler.supports(lock)).thenReturn(true);
+
+        distributedLock.unlock(lock);
+
+        verify(leaseRenewalScheduler).unregister(lock);
+        verify(lock).unlock();
+    }
+
+    @Test
+    void nullLockIsIgnored() {
+        distributedLock.unlock(null);
+    }
+}
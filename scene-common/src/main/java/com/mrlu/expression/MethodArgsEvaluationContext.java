@@ -0,0 +1,79 @@
+package com.mrlu.expression;
+
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author 简单de快乐
+ *
+ * 基于方法参数求值的共享表达式上下文，每个方法只创建一次，限流和分布式锁的key表达式共用
+ * （1）与MethodBasedEvaluationContext一样支持#参数名、#p0、#a0
+ * （2）不再调用setVariable，变量通过lookupVariable从当前线程的参数中读取，多线程共享时只读
+ * （3）表达式中可能调用其他带注解的方法，求值时保存外层的参数，求值后恢复
+ */
+public class MethodArgsEvaluationContext extends StandardEvaluationContext {
+
+    private static final ParameterNameDiscoverer PARAMETER_NAME_DISCOVERER = new DefaultParameterNameDiscoverer();
+
+    /**
+     * 当前线程正在求值的方法参数
+     */
+    private static final ThreadLocal<Object[]> CURRENT_ARGS = new ThreadLocal<>();
+
+    /**
+     * 变量名 -> 参数下标
+     */
+    private final Map<String, Integer> paramIndexes;
+
+    public MethodArgsEvaluationContext(Method method) {
+        int count = method.getParameterCount();
+        String[] paramNames = PARAMETER_NAME_DISCOVERER.getParameterNames(method);
+        this.paramIndexes = new HashMap<>(count * 6);
+        for (int i = 0; i < count; i++) {
+            paramIndexes.put("p" + i, i);
+            paramIndexes.put("a" + i, i);
+            if (paramNames != null) {
+                paramIndexes.put(paramNames[i], i);
+            }
+        }
+        // 提前初始化懒加载的解析器，之后多线程共享时只读
+        getPropertyAccessors();
+        getConstructorResolvers();
+        getMethodResolvers();
+        getTypeLocator();
+        getTypeConverter();
+    }
+
+    /**
+     * 以args作为方法参数对表达式求值
+     */
+    public Object getValue(Expression expression, Object[] args) {
+        Object[] previous = CURRENT_ARGS.get();
+        CURRENT_ARGS.set(args);
+        try {
+            return expression.getValue(this);
+        } finally {
+            if (previous == null) {
+                CURRENT_ARGS.remove();
+            } else {
+                CURRENT_ARGS.set(previous);
+            }
+        }
+    }
+
+    @Override
+    public Object lookupVariable(String name) {
+        Integer index = paramIndexes.get(name);
+        Object[] args = CURRENT_ARGS.get();
+        if (index == null || args == null || index >= args.length) {
+            return super.lookupVariable(name);
+        }
+        return args[index];
+    }
+}
@@ -0,0 +1,98 @@
+package com.mrlu.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author 简单de快乐
+ *
+ * Lua脚本注册中心
+ * （1）脚本在启动时注册一次，DefaultRedisScript只创建一次，sha1也只计算一次
+ * （2）容器启动完成后通过SCRIPT LOAD把所有脚本预加载到redis
+ * （3）运行期通过redisTemplate.execute(script, ...)调用，底层DefaultScriptExecutor会先发EVALSHA，
+ *      如果redis重启或者执行了SCRIPT FLUSH返回NOSCRIPT，会自动回退为EVAL并重新缓存脚本
+ */
+@Slf4j
+public class RedisScriptRegistry implements SmartInitializingSingleton {
+
+    private final RedisTemplate<?, ?> redisTemplate;
+
+    /**
+     * 脚本名 -> 脚本
+     */
+    private final Map<String, RedisScript<?>> scripts = new ConcurrentHashMap<>();
+
+    public RedisScriptRegistry(RedisTemplate<?, ?> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * 注册脚本，同名脚本只会注册一次
+     * 同名但脚本内容或返回值类型不同时抛出IllegalStateException，避免调用方拿到旧脚本却不知情
+     * @param name 脚本名
+     * @param lua 脚本内容
+     * @param resultType 返回值类型
+     * @return 注册后的脚本，调用方持有后直接用于执行
+     */
+    @SuppressWarnings("unchecked")
+    public <T> RedisScript<T> register(String name, String lua, Class<T> resultType) {
+        RedisScript<?> script = scripts.computeIfAbsent(name, k -> new DefaultRedisScript<>(lua, resultType));
+        if (!script.getScriptAsString().equals(lua) || !Objects.equals(script.getResultType(), resultType)) {
+            throw new IllegalStateException("lua script " + name + " already registered with a different body or result type");
+        }
+        return (RedisScript<T>) script;
+    }
+
+    /**
+     * 根据脚本名获取已注册的脚本
+     */
+    @SuppressWarnings("unchecked")
+    public <T> RedisScript<T> get(String name) {
+        RedisScript<?> script = scripts.get(name);
+        if (script == null) {
+            throw new IllegalArgumentException("lua script not registered: " + name);
+        }
+        return (RedisScript<T>) script;
+    }
+
+    /**
+     * 通过SCRIPT LOAD把已注册的脚本加载到redis
+     * 加载失败不影响启动，第一次调用时会因NOSCRIPT回退为EVAL
+     */
+    public void load() {
+        if (scripts.isEmpty()) {
+            return;
+        }
+        try {
+            redisTemplate.execute((RedisCallback<Void>) connection -> {
+                scripts.forEach((name, script) -> load(connection, name, script));
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("预加载lua脚本失败，首次调用时将回退为EVAL：{}", e.getMessage());
+        }
+    }
+
+    private void load(RedisConnection connection, String name, RedisScript<?> script) {
+        String sha = connection.scriptingCommands().scriptLoad(script.getScriptAsString().getBytes(StandardCharsets.UTF_8));
+        if (!script.getSha1().equals(sha)) {
+            log.warn("lua脚本{}的sha1不一致，local={}，redis={}", name, script.getSha1(), sha);
+        }
+        log.info("lua脚本{}已加载，sha1={}", name, sha);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        load();
+    }
+}